@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.Random;
+
+/**
+ * Generators of deterministic payloads used by benchmarks.
+ */
+final class BenchmarkPayloads
+{
+
+    private BenchmarkPayloads()
+    {
+    }
+
+    /**
+     * Returns JSON object with provided number of fields.
+     */
+    static String jsonObject(int fields)
+    {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < fields; i++)
+        {
+            if (i > 0)
+            {
+                builder.append(',');
+            }
+            builder.append("\"field").append(i).append("\":\"value ").append(i).append('"');
+        }
+
+        return builder.append('}').toString();
+    }
+
+    /**
+     * Returns JSON array of objects, each object is about 100 bytes long.
+     */
+    static String jsonArray(int items)
+    {
+        StringBuilder builder = new StringBuilder(items * 100).append('[');
+        for (int i = 0; i < items; i++)
+        {
+            if (i > 0)
+            {
+                builder.append(',');
+            }
+            builder.append("{\"id\":").append(i)
+                    .append(",\"name\":\"Item number ").append(i)
+                    .append("\",\"price\":").append(i * 0.25)
+                    .append(",\"available\":").append(i % 2 == 0)
+                    .append(",\"tags\":[\"a\",\"b\"]}");
+        }
+
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Returns random bytes of provided length.
+     */
+    static byte[] bytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+
+        return bytes;
+    }
+
+}
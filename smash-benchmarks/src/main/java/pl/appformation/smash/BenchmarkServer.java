@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import javax.net.ServerSocketFactory;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * In-process HTTP server serving canned payloads for benchmarks.
+ */
+final class BenchmarkServer
+{
+
+    /** Server instance */
+    private final MockWebServer mServer = new MockWebServer();
+
+    /** Delay of response body in milliseconds */
+    private final long mBodyDelay;
+
+    /**
+     * Creates server responding immediately.
+     */
+    BenchmarkServer()
+    {
+        this(0);
+    }
+
+    /**
+     * Creates server delaying every response body, simulating slow backend.
+     *
+     * @param bodyDelay Delay of response body in milliseconds
+     */
+    BenchmarkServer(long bodyDelay)
+    {
+        mBodyDelay = bodyDelay;
+    }
+
+    void start() throws IOException
+    {
+        final Buffer smallJson = new Buffer().writeUtf8(BenchmarkPayloads.jsonObject(8));
+        final Buffer largeJson = new Buffer().writeUtf8(BenchmarkPayloads.jsonArray(2000));
+        final Buffer rawBytes = new Buffer().write(BenchmarkPayloads.bytes(64 * 1024));
+
+        mServer.setDispatcher(new Dispatcher()
+        {
+            @Override
+            public MockResponse dispatch(RecordedRequest request)
+            {
+                MockResponse response = new MockResponse();
+                String path = request.getPath();
+
+                if (path.startsWith("/small-json"))
+                {
+                    response.setBody(smallJson.clone());
+                }
+                else if (path.startsWith("/large-json"))
+                {
+                    response.setBody(largeJson.clone());
+                }
+                else if (path.startsWith("/raw"))
+                {
+                    response.setBody(rawBytes.clone());
+                }
+                else
+                {
+                    response.setResponseCode(500).setBody("{\"error\":\"internal\"}");
+                }
+
+                if (mBodyDelay > 0)
+                {
+                    response.setBodyDelay(mBodyDelay, TimeUnit.MILLISECONDS);
+                }
+
+                return response;
+            }
+        });
+        mServer.setServerSocketFactory(new NoDelayServerSocketFactory());
+        mServer.start();
+    }
+
+    /**
+     * Drops requests recorded by server, so they don't accumulate between iterations.
+     */
+    void drain() throws InterruptedException
+    {
+        while (mServer.takeRequest(0, TimeUnit.MILLISECONDS) != null)
+        {
+        }
+    }
+
+    void shutdown() throws IOException
+    {
+        mServer.shutdown();
+    }
+
+    String url(String path)
+    {
+        return mServer.url(path).toString();
+    }
+
+    /**
+     * Disables Nagle's algorithm on accepted sockets, otherwise headers and body written
+     * separately by server are held by delayed ACKs and every request takes ~40ms.
+     */
+    private static class NoDelayServerSocketFactory extends ServerSocketFactory
+    {
+
+        @Override
+        public ServerSocket createServerSocket() throws IOException
+        {
+            return new NoDelayServerSocket();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException
+        {
+            ServerSocket socket = new NoDelayServerSocket();
+            socket.bind(new InetSocketAddress(port));
+            return socket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException
+        {
+            ServerSocket socket = new NoDelayServerSocket();
+            socket.bind(new InetSocketAddress(port), backlog);
+            return socket;
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException
+        {
+            ServerSocket socket = new NoDelayServerSocket();
+            socket.bind(new InetSocketAddress(address, port), backlog);
+            return socket;
+        }
+
+    }
+
+    private static class NoDelayServerSocket extends ServerSocket
+    {
+
+        NoDelayServerSocket() throws IOException
+        {
+        }
+
+        @Override
+        public Socket accept() throws IOException
+        {
+            Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+
+    }
+
+}
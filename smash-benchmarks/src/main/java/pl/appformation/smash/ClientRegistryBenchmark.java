@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.JavaNetCookieJar;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of obtaining call for request: client rebuilt on every request, as SmashOkHttp
+ * did before, against lookup in {@link SmashClientRegistry}. Run with -prof gc and
+ * compare gc.alloc.rate.norm of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClientRegistryBenchmark
+{
+
+    /** Whether request follows redirects, false forces additional rebuild in legacy path */
+    @Param({"true", "false"})
+    public boolean followRedirects;
+
+    private OkHttpClient mBaseClient;
+
+    private SmashClientRegistry mRegistry;
+
+    private Request mRequest;
+
+    @Setup
+    public void setUp()
+    {
+        mBaseClient = new OkHttpClient.Builder()
+                .connectTimeout(60, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .build();
+        mRegistry = new SmashClientRegistry(mBaseClient);
+        mRequest = new Request.Builder().url("http://localhost/benchmark").build();
+    }
+
+    @Benchmark
+    public Call legacy()
+    {
+        CookieManager cookieManager = new CookieManager();
+        cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
+
+        OkHttpClient client = mBaseClient.newBuilder()
+                .cookieJar(new JavaNetCookieJar(cookieManager))
+                .followRedirects(true)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        if (client.followRedirects() != followRedirects)
+        {
+            client = client.newBuilder()
+                    .followRedirects(followRedirects)
+                    .build();
+        }
+
+        return client.newCall(mRequest);
+    }
+
+    @Benchmark
+    public Call registry()
+    {
+        return mRegistry.get(followRedirects, true).newCall(mRequest);
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Burst of responses finishing together on dispatcher threads and delivered to main thread.
+ * Main thread is modelled by single thread executor with one message per post, like Handler
+ * of main looper. Score is wall time of whole burst, main thread busy time is measured inside
+ * each message: busyUsPerBurst is total time main thread ran messages of burst and maxMessageUs
+ * the longest single message in iteration, i.e. longest time it couldn't draw a frame.
+ * Compare DIRECT, one message per response, against BATCHED.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeliveryBenchmark
+{
+
+    public enum Delivery
+    {
+        DIRECT, BATCHED
+    }
+
+    @Param({"DIRECT", "BATCHED"})
+    public Delivery delivery;
+
+    /** Number of responses finishing together */
+    @Param({"500"})
+    public int burst;
+
+    /** Number of dispatcher threads finishing responses */
+    private static final int DISPATCHERS = 4;
+
+    /**
+     * Busy time of main thread, reported next to wall time of burst.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class MainThreadBusy
+    {
+        /** Average time main thread spent running messages of one burst, in microseconds */
+        public double busyUsPerBurst;
+
+        /** Longest single message in iteration, in microseconds */
+        public double maxMessageUs;
+
+        private long mBursts;
+
+        private long mBusyNanos;
+
+        private long mMaxMessageNanos;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            busyUsPerBurst = 0;
+            maxMessageUs = 0;
+            mBursts = 0;
+            mBusyNanos = 0;
+            mMaxMessageNanos = 0;
+        }
+
+        void add(long busyNanos, long maxMessageNanos)
+        {
+            mBursts++;
+            mBusyNanos += busyNanos;
+            mMaxMessageNanos = Math.max(mMaxMessageNanos, maxMessageNanos);
+            busyUsPerBurst = mBusyNanos / 1000.0 / mBursts;
+            maxMessageUs = mMaxMessageNanos / 1000.0;
+        }
+    }
+
+    /** Time main thread spent running messages of current burst */
+    private final AtomicLong mBusyNanos = new AtomicLong();
+
+    /** Longest message of current burst */
+    private final AtomicLong mMaxMessageNanos = new AtomicLong();
+
+    private ExecutorService mMainThread;
+
+    private ExecutorService mDispatchers;
+
+    private Executor mExecutor;
+
+    @Setup
+    public void setUp()
+    {
+        mMainThread = Executors.newSingleThreadExecutor();
+        mDispatchers = Executors.newFixedThreadPool(DISPATCHERS);
+
+        // Times each message as main looper would see it
+        Executor timedMainThread = new Executor()
+        {
+            public void execute(final Runnable message)
+            {
+                mMainThread.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        long start = System.nanoTime();
+                        try
+                        {
+                            message.run();
+                        }
+                        finally
+                        {
+                            long time = System.nanoTime() - start;
+                            mBusyNanos.addAndGet(time);
+                            if (time > mMaxMessageNanos.get())
+                            {
+                                // Only main thread writes, so plain check is enough
+                                mMaxMessageNanos.set(time);
+                            }
+                        }
+                    }
+                });
+            }
+        };
+
+        mExecutor = delivery == Delivery.BATCHED ? new SmashBatchingExecutor(timedMainThread, 32) : timedMainThread;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mDispatchers.shutdownNow();
+        mMainThread.shutdownNow();
+    }
+
+    @Benchmark
+    public void burst(MainThreadBusy busy) throws Exception
+    {
+        final CountDownLatch delivered = new CountDownLatch(burst);
+        final Runnable listener = new Runnable()
+        {
+            public void run()
+            {
+                Blackhole.consumeCPU(50);
+                delivered.countDown();
+            }
+        };
+
+        for (int i = 0; i < DISPATCHERS; i++)
+        {
+            mDispatchers.execute(new Runnable()
+            {
+                public void run()
+                {
+                    for (int response = 0; response < burst / DISPATCHERS; response++)
+                    {
+                        mExecutor.execute(listener);
+                    }
+                }
+            });
+        }
+
+        delivered.await();
+
+        // Last message records its time after listener counts down, wait until it's done
+        mMainThread.submit(new Runnable()
+        {
+            public void run()
+            {
+            }
+        }).get();
+        busy.add(mBusyNanos.getAndSet(0), mMaxMessageNanos.getAndSet(0));
+    }
+
+}
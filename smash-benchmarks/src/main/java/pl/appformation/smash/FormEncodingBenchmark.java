@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of encoding params of telemetry POST into body buffer: URLEncoder per key and value
+ * joined in StringBuilder and copied with writeUtf8, as SmashRequest did before, against
+ * {@link SmashFormEncoder}. Buffer is cleared after each encoding, as sending body does,
+ * so its segments go back to pool. Run with -prof gc and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormEncodingBenchmark
+{
+
+    private static final String ENCODING = "UTF-8";
+
+    private final Map<String, String> mParams = new LinkedHashMap<>();
+
+    private final Buffer mBuffer = new Buffer();
+
+    @Setup
+    public void setUp()
+    {
+        mParams.put("event", "screen_view");
+        mParams.put("screen", "Settings / Notifications");
+        mParams.put("session_id", "3f2c9a1e-7b4d-4e8a-9c1f-2d6b8e0a5f47");
+        mParams.put("timestamp", "1508234567890");
+        mParams.put("device", "Pixel 2 XL (Android 8.1.0)");
+        mParams.put("locale", "pl_PL");
+        mParams.put("city", "Krak\u00f3w");
+        mParams.put("duration_ms", "1532");
+        mParams.put("referrer", "https://example.com/path?utm_source=app&utm_medium=push");
+        mParams.put("battery", "87%");
+    }
+
+    @Benchmark
+    public long legacy() throws UnsupportedEncodingException
+    {
+        StringBuilder encodedParams = new StringBuilder();
+        for (Map.Entry<String, String> entry : mParams.entrySet())
+        {
+            encodedParams.append(URLEncoder.encode(entry.getKey(), ENCODING));
+            encodedParams.append('=');
+            encodedParams.append(URLEncoder.encode(entry.getValue(), ENCODING));
+            encodedParams.append('&');
+        }
+        mBuffer.writeUtf8(encodedParams.toString());
+
+        long size = mBuffer.size();
+        mBuffer.clear();
+        return size;
+    }
+
+    @Benchmark
+    public long encoder()
+    {
+        SmashFormEncoder.encode(mBuffer, mParams, ENCODING);
+
+        long size = mBuffer.size();
+        mBuffer.clear();
+        return size;
+    }
+
+}
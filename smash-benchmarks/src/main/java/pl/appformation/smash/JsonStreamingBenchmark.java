@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import com.squareup.moshi.JsonReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.appformation.smash.requests.SmashJsonArrayRequest;
+import pl.appformation.smash.requests.SmashJsonReaderRequest;
+
+/**
+ * Parsing of large JSON arrays: org.json tree built from String against streaming
+ * JSON reader binding to model objects. Run with -prof gc to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class JsonStreamingBenchmark
+{
+
+    /** Number of items in array, each item is about 100 bytes long */
+    @Param({"10000", "100000"})
+    public int items;
+
+    private Buffer mPayload;
+
+    @Setup
+    public void setUp()
+    {
+        mPayload = new Buffer().writeUtf8(BenchmarkPayloads.jsonArray(items));
+    }
+
+    @Benchmark
+    public Object jsonArray()
+    {
+        return parse(new SmashJsonArrayRequest(SmashRequest.Method.GET, null, null));
+    }
+
+    @Benchmark
+    public Object jsonReader()
+    {
+        return parse(new ItemsRequest());
+    }
+
+    private SmashResponse<?> parse(SmashRequest<?> request)
+    {
+        SmashResponse<?> response = request.parseResponse(data());
+        if (!response.isSuccess())
+        {
+            throw new IllegalStateException(response.getError());
+        }
+
+        return response;
+    }
+
+    private SmashNetworkData data()
+    {
+        SmashNetworkData data = new SmashNetworkData();
+        data.code = 200;
+        data.source = mPayload.clone();
+        data.length = mPayload.size();
+
+        return data;
+    }
+
+    /**
+     * Model object of array item.
+     */
+    static class Item
+    {
+        long id;
+        String name;
+        double price;
+        boolean available;
+        List<String> tags = new ArrayList<>(2);
+    }
+
+    /**
+     * Request binding array directly to list of items.
+     */
+    static class ItemsRequest extends SmashJsonReaderRequest<List<Item>>
+    {
+
+        private static final JsonReader.Options NAMES = JsonReader.Options.of("id", "name", "price", "available", "tags");
+
+        ItemsRequest()
+        {
+            super(Method.GET, null, null);
+        }
+
+        protected List<Item> parse(JsonReader reader) throws IOException
+        {
+            List<Item> result = new ArrayList<>();
+
+            reader.beginArray();
+            while (reader.hasNext())
+            {
+                Item item = new Item();
+
+                reader.beginObject();
+                while (reader.hasNext())
+                {
+                    switch (reader.selectName(NAMES))
+                    {
+                        case 0:
+                            item.id = reader.nextLong();
+                            break;
+                        case 1:
+                            item.name = reader.nextString();
+                            break;
+                        case 2:
+                            item.price = reader.nextDouble();
+                            break;
+                        case 3:
+                            item.available = reader.nextBoolean();
+                            break;
+                        case 4:
+                            reader.beginArray();
+                            while (reader.hasNext())
+                            {
+                                item.tags.add(reader.nextString());
+                            }
+                            reader.endArray();
+                            break;
+                        default:
+                            reader.nextName();
+                            reader.skipValue();
+                            break;
+                    }
+                }
+                reader.endObject();
+
+                result.add(item);
+            }
+            reader.endArray();
+
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.appformation.smash.requests.SmashStringRequest;
+
+/**
+ * Cost of debug logs of single request in release configuration: messages concatenated
+ * and passed to logger, as pipeline did before, against level-gated parameterized
+ * {@link Smash#log(int, String, String, Object)} with debug disabled. Run with -prof gc
+ * and compare gc.alloc.rate.norm of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark
+{
+
+    private static final String TAG = "LoggingBenchmark";
+
+    private SmashLogger mLogger;
+
+    private SmashRequest<String> mRequest;
+
+    @Setup
+    public void setUp(final Blackhole blackhole)
+    {
+        mLogger = new SmashLogger()
+        {
+            public void log(int level, String tag, String message)
+            {
+                blackhole.consume(message);
+            }
+        };
+        mRequest = new SmashStringRequest(SmashRequest.Method.GET, "http://localhost/benchmark", null, null);
+
+        Smash.setLogger(mLogger);
+        Smash.setLogLevel(SmashLogger.INFO);
+    }
+
+    @Benchmark
+    public void legacy()
+    {
+        mLogger.log(SmashLogger.DEBUG, TAG, "Picked up request " + mRequest);
+        mLogger.log(SmashLogger.DEBUG, TAG, "Delivering success response for " + mRequest);
+    }
+
+    @Benchmark
+    public void gated()
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Picked up request {}", mRequest);
+        Smash.log(SmashLogger.DEBUG, TAG, "Delivering success response for {}", mRequest);
+    }
+
+}
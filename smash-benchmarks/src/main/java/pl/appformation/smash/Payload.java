@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import pl.appformation.smash.requests.SmashJsonArrayRequest;
+import pl.appformation.smash.requests.SmashJsonObjectRequest;
+import pl.appformation.smash.requests.SmashRawBytesRequest;
+import pl.appformation.smash.requests.SmashStringRequest;
+
+/**
+ * Request types measured by benchmarks, each served from its own path of {@link BenchmarkServer}.
+ */
+public enum Payload
+{
+
+    SMALL_JSON("/small-json")
+    {
+        @SuppressWarnings("unchecked")
+        SmashRequest<?> newRequest(String url, SmashFuture future)
+        {
+            return new SmashJsonObjectRequest(SmashRequest.Method.GET, url, future, future);
+        }
+    },
+    LARGE_JSON("/large-json")
+    {
+        @SuppressWarnings("unchecked")
+        SmashRequest<?> newRequest(String url, SmashFuture future)
+        {
+            return new SmashJsonArrayRequest(SmashRequest.Method.GET, url, future, future);
+        }
+    },
+    RAW_BYTES("/raw")
+    {
+        @SuppressWarnings("unchecked")
+        SmashRequest<?> newRequest(String url, SmashFuture future)
+        {
+            return new SmashRawBytesRequest(SmashRequest.Method.GET, url, future, future);
+        }
+    },
+    ERROR("/error")
+    {
+        @SuppressWarnings("unchecked")
+        SmashRequest<?> newRequest(String url, SmashFuture future)
+        {
+            return new SmashStringRequest(SmashRequest.Method.GET, url, future, future);
+        }
+    };
+
+    /** Path of payload on benchmark server */
+    final String path;
+
+    Payload(String path)
+    {
+        this.path = path;
+    }
+
+    /**
+     * Creates request for payload, reporting to provided future.
+     */
+    abstract SmashRequest<?> newRequest(String url, SmashFuture future);
+
+}
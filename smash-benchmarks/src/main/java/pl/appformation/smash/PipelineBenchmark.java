@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end throughput and latency of request pipeline: SmashQueue, dispatcher,
+ * SmashOkHttp.perform, parseResponse and delivery, against local MockWebServer.
+ *
+ * Sample time mode reports p50 and p99 latency, run with -prof gc (default of
+ * jmh task) to see allocation rate per request type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class PipelineBenchmark
+{
+
+    @Param({"SMALL_JSON", "LARGE_JSON", "RAW_BYTES", "ERROR"})
+    public Payload payload;
+
+    @Param({"false", "true"})
+    public boolean asyncDispatching;
+
+    private BenchmarkServer mServer;
+
+    private SmashQueue mQueue;
+
+    private String mUrl;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mServer = new BenchmarkServer();
+        mServer.start();
+        mUrl = mServer.url(payload.path);
+
+        mQueue = new SmashQueue();
+        mQueue.setAsyncDispatching(asyncDispatching);
+        mQueue.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException
+    {
+        mServer.drain();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        mQueue.stop();
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public Object request() throws InterruptedException
+    {
+        SmashFuture<?> future = new SmashFuture<>();
+        mQueue.add(payload.newRequest(mUrl, future));
+
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException ee)
+        {
+            return ee;
+        }
+    }
+
+}
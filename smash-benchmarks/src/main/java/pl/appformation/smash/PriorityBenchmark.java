@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.appformation.smash.SmashRequest.Priority;
+import pl.appformation.smash.errors.SmashError;
+import pl.appformation.smash.requests.SmashStringRequest;
+
+/**
+ * Latency of single request of given priority while queue is kept full of
+ * background requests with normal priority. Compare p99 of HIGH against NORMAL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(1)
+@Fork(1)
+public class PriorityBenchmark
+{
+
+    @Param({"NORMAL", "HIGH"})
+    public Priority priority;
+
+    /** Number of background requests kept in queue */
+    @Param({"200"})
+    public int queueDepth;
+
+    private BenchmarkServer mServer;
+
+    private SmashQueue mQueue;
+
+    private Thread mFiller;
+
+    private String mUrl;
+
+    @Setup
+    public void setUp() throws IOException
+    {
+        mServer = new BenchmarkServer(5);
+        mServer.start();
+        mUrl = mServer.url("/small-json");
+
+        mQueue = new SmashQueue(2);
+        mQueue.start();
+
+        final Semaphore depth = new Semaphore(queueDepth);
+        final SmashResponse.SuccessListener<String> release = new SmashResponse.SuccessListener<String>()
+        {
+            public void onResponse(String response)
+            {
+                depth.release();
+            }
+        };
+        final SmashResponse.FailedListener failed = new SmashResponse.FailedListener()
+        {
+            public void onFailedResponse(SmashError error)
+            {
+                depth.release();
+            }
+        };
+
+        mFiller = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    while (!Thread.interrupted())
+                    {
+                        depth.acquire();
+                        mQueue.add(new SmashStringRequest(SmashRequest.Method.GET, mUrl, release, failed));
+                    }
+                }
+                catch (InterruptedException ignored)
+                {
+                }
+            }
+        }, "QueueFiller");
+        mFiller.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException
+    {
+        mServer.drain();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException
+    {
+        mFiller.interrupt();
+        mFiller.join();
+        mQueue.cancelAll();
+        mQueue.stop();
+        mServer.shutdown();
+    }
+
+    @Benchmark
+    public Object request() throws InterruptedException, ExecutionException
+    {
+        SmashFuture<String> future = new SmashFuture<>();
+        SmashStringRequest request = new SmashStringRequest(SmashRequest.Method.GET, mUrl, future, future);
+        request.setPriority(priority);
+
+        mQueue.add(request);
+        return future.get();
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.appformation.smash.requests.SmashStringRequest;
+
+/**
+ * Cost of registering and finishing request by 16 threads while another thread keeps
+ * canceling all current requests: synchronized HashSet, as SmashQueue used before,
+ * against {@link SmashRequestRegistry}. Compare score of add/finish methods.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark
+{
+
+    /** Number of requests kept registered, iterated by cancel all */
+    private static final int BACKGROUND = 64;
+
+    @State(Scope.Group)
+    public static class Registries
+    {
+
+        final Set<SmashRequest<?>> set = new HashSet<>();
+
+        final SmashRequestRegistry registry = new SmashRequestRegistry();
+
+        @Setup
+        public void setUp()
+        {
+            for (int i = 0; i < BACKGROUND; i++)
+            {
+                SmashRequest<?> request = newRequest(i % 4);
+                set.add(request);
+                registry.add(request, SmashRequestQueue.hostOf(request));
+            }
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Requests
+    {
+
+        final SmashRequest<?>[] requests = new SmashRequest<?>[16];
+
+        final String[] hosts = new String[requests.length];
+
+        int next;
+
+        @Setup
+        public void setUp()
+        {
+            for (int i = 0; i < requests.length; i++)
+            {
+                requests[i] = newRequest(i % 4);
+                hosts[i] = SmashRequestQueue.hostOf(requests[i]);
+            }
+        }
+
+    }
+
+    private static SmashRequest<?> newRequest(int host)
+    {
+        SmashRequest<?> request = new SmashStringRequest(SmashRequest.Method.GET, "http://host" + host + ".localhost/benchmark", null, null);
+        request.setTag("screen" + host);
+        return request;
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(16)
+    public void legacyAddFinish(Registries registries, Requests requests)
+    {
+        int index = requests.next++ & (requests.requests.length - 1);
+        SmashRequest<?> request = requests.requests[index];
+
+        synchronized (registries.set)
+        {
+            registries.set.add(request);
+        }
+        synchronized (registries.set)
+        {
+            registries.set.remove(request);
+        }
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(1)
+    public int legacyCancelAll(Registries registries)
+    {
+        int canceled = 0;
+        synchronized (registries.set)
+        {
+            for (SmashRequest<?> request : registries.set)
+            {
+                canceled += request.isCanceled() ? 0 : 1;
+            }
+        }
+
+        return canceled;
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(16)
+    public void registryAddFinish(Registries registries, Requests requests)
+    {
+        int index = requests.next++ & (requests.requests.length - 1);
+
+        registries.registry.add(requests.requests[index], requests.hosts[index]);
+        registries.registry.remove(requests.requests[index]);
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public int registryCancelAll(Registries registries)
+    {
+        int canceled = 0;
+        for (SmashRequest<?> request : registries.registry.getAll())
+        {
+            canceled += request.isCanceled() ? 0 : 1;
+        }
+
+        return canceled;
+    }
+
+}
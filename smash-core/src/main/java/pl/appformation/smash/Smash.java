@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class Smash
+{
+
+    /** Default user agent */
+    private static final String USER_AGENT = "smash/1";
+
+    /** Cached user agent based on application name and version */
+    private static String sCachedUserAgent = null;
+
+    /** Current user agent */
+    private static String sUserAgent = null;
+
+    /** Destination of logs, java.util.logging by default */
+    private static volatile SmashLogger sLogger = new SmashLogger()
+    {
+        public void log(int level, String tag, String message)
+        {
+            Logger.getLogger(tag).log(toLevel(level), message);
+        }
+    };
+
+    /** Lowest level of logged messages */
+    private static volatile int sLogLevel = SmashLogger.INFO;
+
+    /** Executor delivering responses of queues created without one, null for dispatcher threads */
+    private static volatile Executor sDefaultDelivery = null;
+
+    /** Thread priority policy, plain Java thread priority by default */
+    private static volatile SmashThreadPriority sThreadPriority = new SmashThreadPriority()
+    {
+        public void applyBackgroundPriority()
+        {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        }
+    };
+
+    /**
+     * Builds new SmashQueue to handle requests. Responses will be delivered on default
+     * executor of platform, main thread on Android once {@code SmashAndroid.install()}
+     * was called, dispatcher threads on plain JVM.
+     *
+     * @return Newly created {@link SmashQueue}
+     */
+    public static SmashQueue buildSmashQueue()
+    {
+        SmashQueue queue = new SmashQueue();
+        queue.start();
+
+        return queue;
+    }
+
+    public static String getUserAgent()
+    {
+        if (sUserAgent != null)
+        {
+            return sUserAgent;
+        }
+
+        if (sCachedUserAgent != null)
+        {
+            return sCachedUserAgent;
+        }
+
+        return USER_AGENT;
+    }
+
+    static void log(int level, String tag, String message)
+    {
+        if (level >= sLogLevel)
+        {
+            sLogger.log(level, tag, message);
+        }
+    }
+
+    /**
+     * Logs message with placeholder {} replaced by argument. Message is formatted
+     * only if its level is logged, so arguments should be passed as they are.
+     */
+    static void log(int level, String tag, String format, Object arg)
+    {
+        if (level >= sLogLevel)
+        {
+            sLogger.log(level, tag, format(format, arg));
+        }
+    }
+
+    static void log(int level, String tag, String format, Object arg1, Object arg2)
+    {
+        if (level >= sLogLevel)
+        {
+            sLogger.log(level, tag, format(format, arg1, arg2));
+        }
+    }
+
+    static void log(int level, String tag, String format, Object arg1, Object arg2, Object arg3)
+    {
+        if (level >= sLogLevel)
+        {
+            sLogger.log(level, tag, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * Replaces consecutive {} placeholders of format with arguments.
+     */
+    private static String format(String format, Object... args)
+    {
+        StringBuilder message = new StringBuilder(format.length() + 32 * args.length);
+
+        int start = 0;
+        for (Object arg : args)
+        {
+            int placeholder = format.indexOf("{}", start);
+            if (placeholder < 0)
+            {
+                break;
+            }
+
+            message.append(format, start, placeholder).append(arg);
+            start = placeholder + 2;
+        }
+
+        return message.append(format, start, format.length()).toString();
+    }
+
+    private static Level toLevel(int level)
+    {
+        switch (level)
+        {
+            case SmashLogger.VERBOSE:
+                return Level.FINER;
+            case SmashLogger.DEBUG:
+                return Level.FINE;
+            case SmashLogger.INFO:
+                return Level.INFO;
+            case SmashLogger.WARN:
+                return Level.WARNING;
+            default:
+                return Level.SEVERE;
+        }
+    }
+
+    /**
+     * Lowers priority of calling thread according to current {@link SmashThreadPriority}.
+     */
+    static void applyBackgroundPriority()
+    {
+        sThreadPriority.applyBackgroundPriority();
+    }
+
+    /**
+     * Sets user agent used when none was set with {@link #setUserAgent(String)},
+     * platforms use it to provide application name and version.
+     */
+    static void setDefaultUserAgent(String userAgent)
+    {
+        Smash.sCachedUserAgent = userAgent;
+    }
+
+    /**
+     * Returns executor delivering responses of queues created without one, null if they
+     * are delivered on dispatcher threads.
+     */
+    static Executor getDefaultDelivery()
+    {
+        return sDefaultDelivery;
+    }
+
+    /**
+     * Sets executor delivering responses of queues created without one, platforms use it
+     * to deliver on their main thread.
+     */
+    static void setDefaultDelivery(Executor defaultDelivery)
+    {
+        Smash.sDefaultDelivery = defaultDelivery;
+    }
+
+    /**
+     * Sets destination of logs.
+     *
+     * @param logger Logger
+     */
+    public static void setLogger(@NonNull SmashLogger logger)
+    {
+        Smash.sLogger = logger;
+    }
+
+    /**
+     * Sets lowest level of logged messages, default is {@link SmashLogger#INFO}. Messages of
+     * lower levels cost single comparison, they aren't formatted nor passed to logger.
+     *
+     * @param level Log level, e.g. {@link SmashLogger#DEBUG} to trace every request
+     */
+    public static void setLogLevel(int level)
+    {
+        Smash.sLogLevel = level;
+    }
+
+    /**
+     * Sets policy used to lower priority of dispatcher and parser threads.
+     *
+     * @param threadPriority Thread priority policy
+     */
+    public static void setThreadPriority(@NonNull SmashThreadPriority threadPriority)
+    {
+        Smash.sThreadPriority = threadPriority;
+    }
+
+    public static void setUserAgent(String userAgent)
+    {
+        Smash.sUserAgent = userAgent;
+    }
+
+}
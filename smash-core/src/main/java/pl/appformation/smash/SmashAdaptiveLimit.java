@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Limit of requests performed concurrently by {@link SmashQueue}, adapted to observed latency
+ * and errors with additive increase, multiplicative decrease (AIMD).
+ *
+ * Latency of request is time from sending it to receiving headers of its response, so
+ * uploads and reading of response body don't count as congestion. Lowest latency is kept
+ * per host, as hosts far away would otherwise always look congested next to close ones.
+ *
+ * Each request which didn't fail and had latency within tolerance of the lowest latency
+ * seen for its host raises limit by 1 / limit, so limit grows by one per limit of such requests, as long
+ * as queue actually uses most of it. Failed or slow request lowers limit by backoff ratio.
+ * Limit stays within bounds passed to constructor.
+ */
+public class SmashAdaptiveLimit
+{
+
+    /**
+     * Interface for being notified about changes of limit.
+     */
+    public interface Listener
+    {
+        void onLimitChanged(int oldLimit, int newLimit);
+    }
+
+    /** Tag used for logging */
+    private static final String TAG = "SmashAdaptiveLimit";
+
+    /** Number of samples of host after which its lowest latency is forgotten, so it can follow network changes */
+    private static final int BASELINE_WINDOW = 1000;
+
+    /** Minimum limit */
+    private final int mMinLimit;
+
+    /** Maximum limit */
+    private final int mMaxLimit;
+
+    /** Listeners of limit changes */
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /** Factor by which limit is lowered on congestion */
+    private double mBackoffRatio = 0.9;
+
+    /** Factor of lowest latency above which request is considered slow */
+    private double mTolerance = 2.0;
+
+    /** Current limit, with fraction accumulated by additive increase */
+    private double mEstimate;
+
+    /** Current limit, rounded down */
+    private volatile int mLimit;
+
+    /** Lowest latencies seen, by host name */
+    private final Map<String, Baseline> mBaselines = new HashMap<>();
+
+    /**
+     * Creates limit starting at its minimum.
+     *
+     * @param minLimit Minimum number of concurrent requests
+     * @param maxLimit Maximum number of concurrent requests, also number of dispatcher threads started
+     */
+    public SmashAdaptiveLimit(int minLimit, int maxLimit)
+    {
+        if (minLimit < 1 || maxLimit < minLimit)
+        {
+            throw new IllegalArgumentException("Invalid limit bounds " + minLimit + ".." + maxLimit);
+        }
+
+        mMinLimit = minLimit;
+        mMaxLimit = maxLimit;
+        mEstimate = minLimit;
+        mLimit = minLimit;
+    }
+
+    /**
+     * Adds listener notified on thread which reported request causing change of limit.
+     *
+     * @param listener Listener of limit changes
+     */
+    public void addListener(@NonNull Listener listener)
+    {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Returns current limit of concurrent requests.
+     */
+    public int getLimit()
+    {
+        return mLimit;
+    }
+
+    /**
+     * Returns maximum limit of concurrent requests.
+     */
+    public int getMaxLimit()
+    {
+        return mMaxLimit;
+    }
+
+    /**
+     * Returns minimum limit of concurrent requests.
+     */
+    public int getMinLimit()
+    {
+        return mMinLimit;
+    }
+
+    /**
+     * Updates limit with outcome of request.
+     *
+     * @param host Name of host request was sent to
+     * @param latency Time in nanoseconds from sending request to receiving headers of its response
+     * @param failed True if request failed with network error or server overload
+     * @param inFlight Number of requests in flight when request completed, including it
+     */
+    void onSample(String host, long latency, boolean failed, int inFlight)
+    {
+        int oldLimit;
+        int newLimit;
+
+        synchronized (this)
+        {
+            Baseline baseline = mBaselines.get(host);
+            if (baseline == null)
+            {
+                baseline = new Baseline();
+                mBaselines.put(host, baseline);
+            }
+            if (++baseline.samples > BASELINE_WINDOW)
+            {
+                baseline.samples = 0;
+                baseline.lowest = Long.MAX_VALUE;
+            }
+            if (!failed)
+            {
+                baseline.lowest = Math.min(baseline.lowest, latency);
+            }
+
+            oldLimit = mLimit;
+            if (failed || latency > baseline.lowest * mTolerance)
+            {
+                mEstimate = Math.max(mMinLimit, mEstimate * mBackoffRatio);
+            }
+            else if (inFlight * 2 >= oldLimit)
+            {
+                mEstimate = Math.min(mMaxLimit, mEstimate + 1.0 / mEstimate);
+            }
+
+            newLimit = (int) mEstimate;
+            mLimit = newLimit;
+        }
+
+        if (newLimit != oldLimit)
+        {
+            Smash.log(SmashLogger.DEBUG, TAG, "Concurrency limit changed from {} to {}", oldLimit, newLimit);
+            for (Listener listener : mListeners)
+            {
+                listener.onLimitChanged(oldLimit, newLimit);
+            }
+        }
+    }
+
+    /**
+     * Removes listener of limit changes.
+     *
+     * @param listener Listener of limit changes
+     */
+    public void removeListener(@NonNull Listener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Sets factor by which limit is lowered when request fails or is slow. Default is 0.9.
+     *
+     * @param backoffRatio Factor between 0 and 1
+     */
+    public synchronized void setBackoffRatio(double backoffRatio)
+    {
+        mBackoffRatio = backoffRatio;
+    }
+
+    /**
+     * Sets factor of lowest latency observed for host above which request is considered slow,
+     * signalling congestion. Default is 2.
+     *
+     * @param tolerance Factor greater than 1
+     */
+    public synchronized void setTolerance(double tolerance)
+    {
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Lowest latency seen for host in current window.
+     */
+    private static class Baseline
+    {
+
+        /** Lowest latency in nanoseconds, Long.MAX_VALUE if none was seen yet */
+        long lowest = Long.MAX_VALUE;
+
+        /** Number of samples in current window */
+        int samples = 0;
+
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Non-blocking dispatcher which hands requests picked from the queue to asynchronous
+ * OkHttp {@link okhttp3.Dispatcher}. Network concurrency is limited by OkHttp global and
+ * per host limits (see {@link SmashOkHttp#setMaxRequests(int)}), which the queue enforces
+ * too: request is taken only when OkHttp can run its call at once, so it never waits in
+ * OkHttp queue ignoring priorities. Responses are parsed on bounded pool of parser threads.
+ */
+public class SmashAsyncDispatcher extends Thread
+{
+
+    /** Capacity of parse queue for each parser thread */
+    private static final int PARSE_QUEUE_CAPACITY = 16;
+
+    /** Queue of requests to pick from */
+    private final BlockingQueue<SmashRequest<?>> mQueue;
+
+    /** Processing steps of picked up requests */
+    private final SmashPipeline mPipeline;
+
+    /** Pool of threads parsing responses */
+    private final ThreadPoolExecutor mParsePool;
+
+    /** Tells whether we should quit */
+    private volatile boolean mQuit = false;
+
+    /**
+     * Creates a new dispatch thread. You must call {@link #start()} in
+     * order to start dispatcher.
+     *
+     * @param queue Queue of incoming requests for triage
+     * @param parseThreads Number of threads parsing responses
+     */
+    public SmashAsyncDispatcher(BlockingQueue<SmashRequest<?>> queue, int parseThreads)
+    {
+        this(queue, new SmashPipeline(), parseThreads);
+    }
+
+    /**
+     * Creates a new dispatch thread processing requests with provided pipeline.
+     *
+     * @param queue Queue of incoming requests for triage
+     * @param pipeline Processing steps of picked up requests
+     * @param parseThreads Number of threads parsing responses
+     */
+    SmashAsyncDispatcher(BlockingQueue<SmashRequest<?>> queue, SmashPipeline pipeline, int parseThreads)
+    {
+        super("SmashAsyncDispatcher");
+        this.mQueue = queue;
+        this.mPipeline = pipeline;
+
+        // When parse queue is full or pool is shut down, OkHttp thread parses by itself
+        mParsePool = new ThreadPoolExecutor(parseThreads, parseThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(parseThreads * PARSE_QUEUE_CAPACITY),
+                new ThreadFactory()
+                {
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        return new Thread(new Runnable()
+                        {
+                            public void run()
+                            {
+                                Smash.applyBackgroundPriority();
+                                runnable.run();
+                            }
+                        }, "SmashParser");
+                    }
+                },
+                new RejectedExecutionHandler()
+                {
+                    public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+                    {
+                        runnable.run();
+                    }
+                });
+    }
+
+    /**
+     * Forces this dispatcher to quit immediately.  If any requests are still in
+     * the queue, they are not guaranteed to be processed. Requests already
+     * executing will be parsed and delivered.
+     */
+    public void quit()
+    {
+        mQuit = true;
+        mParsePool.shutdown();
+        interrupt();
+    }
+
+    @Override
+    public void run()
+    {
+        Smash.applyBackgroundPriority();
+
+        while (true)
+        {
+            final SmashRequest<?> request;
+
+            try
+            {
+                request = mQueue.take();
+            }
+            catch (InterruptedException ie)
+            {
+                if (mQuit)
+                {
+                    return;
+                }
+                continue;
+            }
+
+            if (!mPipeline.beforeNetwork(request))
+            {
+                continue;
+            }
+
+            Call call;
+
+            try
+            {
+                call = SmashOkHttp.newCall(request);
+            }
+            catch (SmashError se)
+            {
+                mPipeline.onNetworkError(request, se);
+                continue;
+            }
+            catch (Exception e)
+            {
+                mPipeline.onNetworkError(request, new SmashError(e));
+                continue;
+            }
+
+            SmashOkHttp.enqueue(request, call, new Callback()
+            {
+                public void onFailure(Call call, IOException ioe)
+                {
+                    final SmashError error = SmashOkHttp.toNetworkError(call, ioe);
+                    mParsePool.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            mPipeline.onNetworkError(request, error);
+                        }
+                    });
+                }
+
+                public void onResponse(Call call, Response response)
+                {
+                    final SmashNetworkData data = SmashOkHttp.toNetworkData(response);
+                    mParsePool.execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            mPipeline.onNetworkData(request, data);
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor collecting deliveries and passing them to target executor in batches, so burst
+ * of responses finishing together takes few messages of target thread instead of one per
+ * response. Deliveries are run in order they were executed. Batch is posted when window
+ * since first pending delivery elapses or when it reaches maximum size, at most maximum
+ * size of deliveries is run within one message so frames can still be drawn in between.
+ */
+public class SmashBatchingExecutor implements Executor
+{
+
+    /** Flush isn't scheduled */
+    private static final int IDLE = 0;
+
+    /** Flush is scheduled after window */
+    private static final int DELAYED = 1;
+
+    /** Flush is posted to target executor */
+    private static final int POSTED = 2;
+
+    /** Scheduler of delayed flushes shared by all executors */
+    private static ScheduledExecutorService sScheduler;
+
+    /** Executor running batches */
+    private final Executor mTarget;
+
+    /** Maximum number of deliveries run within one batch */
+    private final int mMaxBatch;
+
+    /** Window in nanoseconds during which deliveries are collected */
+    private final long mWindow;
+
+    /** Deliveries waiting for flush, guarded by itself */
+    private final ArrayDeque<Runnable> mPending = new ArrayDeque<>();
+
+    /** State of flush, guarded by pending deliveries */
+    private int mState = IDLE;
+
+    /** Runs pending deliveries on target executor */
+    private final Runnable mFlush = new Runnable()
+    {
+        public void run()
+        {
+            flush();
+        }
+    };
+
+    /** Posts flush to target executor when window elapsed */
+    private final Runnable mDelayedFlush = new Runnable()
+    {
+        public void run()
+        {
+            synchronized (mPending)
+            {
+                if (mState != DELAYED)
+                {
+                    return;
+                }
+                mState = POSTED;
+            }
+
+            mTarget.execute(mFlush);
+        }
+    };
+
+    /**
+     * Creates executor batching deliveries which finish before target executor gets
+     * to previous batch, without delaying any of them.
+     *
+     * @param target Executor running batches, e.g. {@link SmashLooperExecutor}
+     * @param maxBatch Maximum number of deliveries run within one batch
+     */
+    public SmashBatchingExecutor(@NonNull Executor target, int maxBatch)
+    {
+        this(target, maxBatch, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates executor batching deliveries which finish within provided window.
+     *
+     * @param target Executor running batches, e.g. {@link SmashLooperExecutor}
+     * @param maxBatch Maximum number of deliveries run within one batch
+     * @param window Time since first pending delivery after which batch is posted, 0 to post right away
+     * @param unit Unit of window
+     */
+    public SmashBatchingExecutor(@NonNull Executor target, int maxBatch, long window, TimeUnit unit)
+    {
+        if (maxBatch < 1 || window < 0)
+        {
+            throw new IllegalArgumentException("Invalid batch size " + maxBatch + " or window " + window);
+        }
+
+        this.mTarget = target;
+        this.mMaxBatch = maxBatch;
+        this.mWindow = unit.toNanos(window);
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler()
+    {
+        if (sScheduler == null)
+        {
+            sScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "SmashBatching");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return sScheduler;
+    }
+
+    public void execute(@NonNull Runnable runnable)
+    {
+        boolean post = false;
+        boolean schedule = false;
+
+        synchronized (mPending)
+        {
+            mPending.add(runnable);
+
+            if (mState == IDLE && mWindow > 0 && mPending.size() < mMaxBatch)
+            {
+                mState = DELAYED;
+                schedule = true;
+            }
+            else if (mState == IDLE || (mState == DELAYED && mPending.size() >= mMaxBatch))
+            {
+                mState = POSTED;
+                post = true;
+            }
+        }
+
+        if (post)
+        {
+            mTarget.execute(mFlush);
+        }
+        else if (schedule)
+        {
+            getScheduler().schedule(mDelayedFlush, mWindow, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs up to maximum batch of pending deliveries, posts itself again if more are left.
+     */
+    private void flush()
+    {
+        Runnable[] batch;
+        boolean more;
+
+        synchronized (mPending)
+        {
+            batch = new Runnable[Math.min(mPending.size(), mMaxBatch)];
+            for (int i = 0; i < batch.length; i++)
+            {
+                batch[i] = mPending.poll();
+            }
+
+            more = !mPending.isEmpty();
+            if (!more)
+            {
+                mState = IDLE;
+            }
+        }
+
+        if (more)
+        {
+            mTarget.execute(mFlush);
+        }
+
+        for (Runnable runnable : batch)
+        {
+            runnable.run();
+        }
+    }
+
+}
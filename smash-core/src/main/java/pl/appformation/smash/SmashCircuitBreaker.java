@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker of {@link SmashQueue}, tracking failures of requests separately for each host.
+ *
+ * Circuit of host is closed while its requests succeed. After number of consecutive failures
+ * (network errors or server overload) reaches threshold, circuit opens: requests waiting for
+ * host and added later fail right away with {@link pl.appformation.smash.errors.SmashCircuitOpenError},
+ * without taking dispatcher. When open duration passes, circuit is half-open: single probe
+ * request is performed, while others wait in queue. Success of probe closes circuit, failure
+ * opens it again.
+ */
+public class SmashCircuitBreaker
+{
+
+    /**
+     * State of circuit of host.
+     */
+    public enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Interface for being notified about changes of state of circuits.
+     */
+    public interface Listener
+    {
+        void onStateChanged(String host, State oldState, State newState);
+    }
+
+    /** Tag used for logging */
+    private static final String TAG = "SmashCircuitBreaker";
+
+    /** Number of consecutive failures opening circuit */
+    private final int mFailureThreshold;
+
+    /** Time in nanoseconds after which open circuit lets probe request through */
+    private final long mOpenDuration;
+
+    /** Listeners of state changes */
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /** Circuits of hosts which failed at least once, by host */
+    private final ConcurrentMap<String, Circuit> mCircuits = new ConcurrentHashMap<>();
+
+    /**
+     * Creates circuit breaker.
+     *
+     * @param failureThreshold Number of consecutive failures of host opening its circuit
+     * @param openDuration Time after which open circuit lets probe request through
+     * @param unit Unit of open duration
+     */
+    public SmashCircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit)
+    {
+        if (failureThreshold < 1 || openDuration < 0)
+        {
+            throw new IllegalArgumentException("Invalid failure threshold " + failureThreshold
+                    + " or open duration " + openDuration);
+        }
+
+        mFailureThreshold = failureThreshold;
+        mOpenDuration = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Adds listener notified on thread which reported request causing change of state.
+     *
+     * @param listener Listener of state changes
+     */
+    public void addListener(@NonNull Listener listener)
+    {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Returns true if request to provided host may be performed, moving open circuit
+     * to half-open when its open duration passed.
+     */
+    boolean allowRequest(String host)
+    {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null)
+        {
+            return true;
+        }
+
+        synchronized (circuit)
+        {
+            if (circuit.state != State.OPEN)
+            {
+                return true;
+            }
+
+            if (System.nanoTime() - circuit.openedAt < mOpenDuration)
+            {
+                return false;
+            }
+
+            circuit.state = State.HALF_OPEN;
+        }
+
+        notifyListeners(host, State.OPEN, State.HALF_OPEN);
+        return true;
+    }
+
+    /**
+     * Returns current state of circuit of provided host.
+     */
+    public @NonNull State getState(@NonNull String host)
+    {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null)
+        {
+            return State.CLOSED;
+        }
+
+        synchronized (circuit)
+        {
+            return circuit.state;
+        }
+    }
+
+    /**
+     * Returns true if circuit of provided host is half-open, so only probe request can be performed.
+     */
+    boolean isHalfOpen(String host)
+    {
+        return mCircuits.containsKey(host) && getState(host) == State.HALF_OPEN;
+    }
+
+    /**
+     * Updates circuit of host with outcome of request which reached network.
+     *
+     * @param host Host of request
+     * @param failed True if request failed with network error or server overload
+     */
+    void onResult(String host, boolean failed)
+    {
+        Circuit circuit = mCircuits.get(host);
+        if (circuit == null)
+        {
+            if (!failed)
+            {
+                return;
+            }
+
+            Circuit created = new Circuit();
+            circuit = mCircuits.putIfAbsent(host, created);
+            if (circuit == null)
+            {
+                circuit = created;
+            }
+        }
+
+        State oldState;
+        State newState;
+
+        synchronized (circuit)
+        {
+            oldState = circuit.state;
+            if (oldState == State.OPEN)
+            {
+                // Result of request dispatched before circuit opened
+                return;
+            }
+
+            if (!failed)
+            {
+                circuit.failures = 0;
+                circuit.state = State.CLOSED;
+            }
+            else if (oldState == State.HALF_OPEN || ++circuit.failures >= mFailureThreshold)
+            {
+                circuit.failures = 0;
+                circuit.state = State.OPEN;
+                circuit.openedAt = System.nanoTime();
+            }
+            newState = circuit.state;
+        }
+
+        if (newState != oldState)
+        {
+            notifyListeners(host, oldState, newState);
+        }
+    }
+
+    private void notifyListeners(String host, State oldState, State newState)
+    {
+        Smash.log(SmashLogger.INFO, TAG, "Circuit of {} changed from {} to {}", host, oldState, newState);
+        for (Listener listener : mListeners)
+        {
+            listener.onStateChanged(host, oldState, newState);
+        }
+    }
+
+    /**
+     * Removes listener of state changes.
+     *
+     * @param listener Listener of state changes
+     */
+    public void removeListener(@NonNull Listener listener)
+    {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * State of circuit of single host, guarded by itself.
+     */
+    private static final class Circuit
+    {
+
+        /** Current state */
+        State state = State.CLOSED;
+
+        /** Number of consecutive failures while closed */
+        int failures;
+
+        /** Time in nanoseconds when circuit opened */
+        long openedAt;
+
+    }
+
+}
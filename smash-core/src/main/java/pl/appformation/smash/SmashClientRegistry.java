@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+
+/**
+ * Immutable set of {@link OkHttpClient} instances, one per combination of
+ * follow redirects and retry on failure flags. All of them are derived from
+ * one base client, so they share connection pool, dispatcher and cookie jar.
+ *
+ * Registry is never modified, changing interceptors creates a new registry
+ * which should be swapped atomically by the owner.
+ */
+final class SmashClientRegistry
+{
+
+    /** Base client all variants are derived from */
+    private final OkHttpClient mBaseClient;
+
+    /** Client variants indexed by {@link #index(boolean, boolean)} */
+    private final OkHttpClient[] mClients = new OkHttpClient[4];
+
+    /**
+     * Creates registry with variants of provided base client.
+     *
+     * @param baseClient Base client
+     */
+    SmashClientRegistry(@NonNull OkHttpClient baseClient)
+    {
+        mBaseClient = baseClient;
+
+        for (int i = 0; i < mClients.length; i++)
+        {
+            boolean followRedirects = (i & 2) != 0;
+            boolean retryOnFailure = (i & 1) != 0;
+
+            if (baseClient.followRedirects() == followRedirects
+                    && baseClient.retryOnConnectionFailure() == retryOnFailure)
+            {
+                mClients[i] = baseClient;
+                continue;
+            }
+
+            mClients[i] = baseClient.newBuilder()
+                    .followRedirects(followRedirects)
+                    .retryOnConnectionFailure(retryOnFailure)
+                    .build();
+        }
+    }
+
+    /**
+     * Returns client configured with provided flags.
+     *
+     * @param followRedirects Whether client should follow redirects
+     * @param retryOnFailure Whether client should silently retry on connection failure
+     * @return Client instance
+     */
+    @NonNull OkHttpClient get(boolean followRedirects, boolean retryOnFailure)
+    {
+        return mClients[index(followRedirects, retryOnFailure)];
+    }
+
+    /**
+     * Returns new registry with network interceptor added to all clients.
+     *
+     * @param interceptor Interceptor object
+     * @return New registry
+     */
+    @NonNull SmashClientRegistry withNetworkInterceptor(@NonNull Interceptor interceptor)
+    {
+        return new SmashClientRegistry(mBaseClient.newBuilder()
+                .addNetworkInterceptor(interceptor)
+                .build());
+    }
+
+    /**
+     * Returns new registry with network interceptor removed from all clients.
+     *
+     * @param interceptor Interceptor object
+     * @return New registry
+     */
+    @NonNull SmashClientRegistry withoutNetworkInterceptor(@NonNull Interceptor interceptor)
+    {
+        OkHttpClient.Builder builder = mBaseClient.newBuilder();
+        builder.networkInterceptors().remove(interceptor);
+
+        return new SmashClientRegistry(builder.build());
+    }
+
+    private static int index(boolean followRedirects, boolean retryOnFailure)
+    {
+        return (followRedirects ? 2 : 0) | (retryOnFailure ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
+
+/**
+ * Disk cache of HTTP responses, one file per entry, with total size cap and
+ * least recently used eviction. Cache is opt-in, see {@link SmashQueue#setCache(SmashDiskCache)}
+ * and {@link SmashRequest#setShouldCache(boolean)}.
+ *
+ * Fresh entries are delivered without touching the network. Stale entries are
+ * delivered first and revalidated with If-None-Match / If-Modified-Since, network
+ * response is delivered only if it changed.
+ */
+public class SmashDiskCache
+{
+
+    /** Tag used for logging */
+    private static final String TAG = "SmashDiskCache";
+
+    /** Magic line identifying version of entry file format */
+    private static final String MAGIC = "smash-cache-1";
+
+    /** Directory of cache files */
+    private final File mDirectory;
+
+    /** Maximum size of all entries in bytes */
+    private final long mMaxSize;
+
+    /** Sizes of entries by file name, in access order */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total size of entries in bytes */
+    private long mSize = 0;
+
+    /** Whether entries were loaded from directory */
+    private boolean mInitialized = false;
+
+    /** Number of requests served from fresh entries */
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    /** Number of requests without entry */
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /** Number of requests with stale entry, revalidated with network */
+    private final AtomicLong mStaleCount = new AtomicLong();
+
+    /** Number of revalidations answered with 304 Not Modified */
+    private final AtomicLong mNotModifiedCount = new AtomicLong();
+
+    /**
+     * Creates cache in provided directory. Directory is read lazily, on first use from dispatcher.
+     *
+     * @param directory Directory of cache files
+     * @param maxSize Maximum size of all entries in bytes
+     */
+    public SmashDiskCache(@NonNull File directory, long maxSize)
+    {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Removes all entries from cache.
+     */
+    public synchronized void clear()
+    {
+        initialize();
+
+        File[] files = mDirectory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Returns entry for provided key, or null if there's no readable entry.
+     *
+     * @param key Cache key of request
+     * @return Cache entry
+     */
+    synchronized @Nullable Entry get(@NonNull String key)
+    {
+        initialize();
+
+        String name = fileName(key);
+        // Lookup also marks entry as recently used
+        if (mEntries.get(name) == null)
+        {
+            return null;
+        }
+
+        File file = new File(mDirectory, name);
+        try
+        {
+            BufferedSource source = Okio.buffer(Okio.source(file));
+            try
+            {
+                Entry entry = readEntry(source);
+                return key.equals(entry.key) ? entry : null;
+            }
+            finally
+            {
+                source.close();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Smash.log(SmashLogger.WARN, TAG, "Unable to read cache entry {}: {}", name, e);
+            removeFile(name);
+            return null;
+        }
+    }
+
+    /**
+     * Stores entry, evicting least recently used entries when cache is full.
+     *
+     * @param entry Entry to store
+     */
+    synchronized void put(@NonNull Entry entry)
+    {
+        initialize();
+
+        String name = fileName(entry.key);
+        File file = new File(mDirectory, name);
+        File tmpFile = new File(mDirectory, name + ".tmp");
+
+        try
+        {
+            BufferedSink sink = Okio.buffer(Okio.sink(tmpFile));
+            try
+            {
+                writeEntry(sink, entry);
+            }
+            finally
+            {
+                sink.close();
+            }
+
+            long size = tmpFile.length();
+            if (size > mMaxSize)
+            {
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.delete();
+                return;
+            }
+
+            removeFile(name);
+            evict(mMaxSize - size);
+
+            if (!tmpFile.renameTo(file))
+            {
+                throw new IOException("Unable to rename " + tmpFile);
+            }
+
+            mEntries.put(name, size);
+            mSize += size;
+        }
+        catch (IOException ioe)
+        {
+            Smash.log(SmashLogger.WARN, TAG, "Unable to write cache entry {}: {}", name, ioe);
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Removes entry for provided key.
+     *
+     * @param key Cache key of request
+     */
+    public synchronized void remove(@NonNull String key)
+    {
+        initialize();
+        removeFile(fileName(key));
+    }
+
+    /**
+     * Returns number of requests served from fresh entries.
+     */
+    public long getHitCount()
+    {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns number of cacheable requests without entry.
+     */
+    public long getMissCount()
+    {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns number of requests with stale entry, revalidated with network.
+     */
+    public long getStaleCount()
+    {
+        return mStaleCount.get();
+    }
+
+    /**
+     * Returns number of revalidations answered with 304 Not Modified.
+     */
+    public long getNotModifiedCount()
+    {
+        return mNotModifiedCount.get();
+    }
+
+    /**
+     * Returns total size of entries in bytes.
+     */
+    public synchronized long getSize()
+    {
+        initialize();
+        return mSize;
+    }
+
+    void recordHit()
+    {
+        mHitCount.incrementAndGet();
+    }
+
+    void recordMiss()
+    {
+        mMissCount.incrementAndGet();
+    }
+
+    void recordStale()
+    {
+        mStaleCount.incrementAndGet();
+    }
+
+    void recordNotModified()
+    {
+        mNotModifiedCount.incrementAndGet();
+    }
+
+    /**
+     * Creates entry from response, or returns null if response shouldn't be cached.
+     *
+     * @param key Cache key of request
+     * @param headers Headers of response
+     * @param body Body of response
+     * @return Cache entry or null
+     */
+    static @Nullable Entry newEntry(@NonNull String key, @NonNull Headers headers, @NonNull Buffer body)
+    {
+        CacheControl cacheControl = CacheControl.parse(headers);
+        if (cacheControl.noStore())
+        {
+            return null;
+        }
+
+        Entry entry = new Entry(key);
+        entry.headers = headers;
+        entry.body = body;
+        entry.etag = headers.get("ETag");
+        entry.lastModified = headers.get("Last-Modified");
+        entry.expires = expires(headers, cacheControl);
+
+        if (!entry.isFresh() && entry.etag == null && entry.lastModified == null)
+        {
+            // Entry could never be served nor revalidated
+            return null;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Returns time in milliseconds until which response is fresh.
+     */
+    private static long expires(Headers headers, CacheControl cacheControl)
+    {
+        long now = System.currentTimeMillis();
+
+        if (cacheControl.noCache() || cacheControl.mustRevalidate())
+        {
+            return now;
+        }
+
+        if (cacheControl.maxAgeSeconds() >= 0)
+        {
+            return now + cacheControl.maxAgeSeconds() * 1000L;
+        }
+
+        Date expires = headers.getDate("Expires");
+        if (expires != null)
+        {
+            Date date = headers.getDate("Date");
+            long served = date != null ? date.getTime() : now;
+
+            return now + Math.max(0, expires.getTime() - served);
+        }
+
+        return now;
+    }
+
+    private String fileName(String key)
+    {
+        return ByteString.encodeUtf8(key).md5().hex();
+    }
+
+    private void removeFile(String name)
+    {
+        Long size = mEntries.remove(name);
+        if (size != null)
+        {
+            mSize -= size;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        new File(mDirectory, name).delete();
+    }
+
+    /**
+     * Evicts least recently used entries until total size fits in provided size.
+     */
+    private void evict(long size)
+    {
+        Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+        while (mSize > size && iterator.hasNext())
+        {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            mSize -= eldest.getValue();
+
+            //noinspection ResultOfMethodCallIgnored
+            new File(mDirectory, eldest.getKey()).delete();
+        }
+    }
+
+    /**
+     * Loads entries of cache directory, oldest files first.
+     */
+    private void initialize()
+    {
+        if (mInitialized)
+        {
+            return;
+        }
+        mInitialized = true;
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs())
+        {
+            Smash.log(SmashLogger.WARN, TAG, "Unable to create cache directory {}", mDirectory);
+            return;
+        }
+
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+        {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>()
+        {
+            public int compare(File left, File right)
+            {
+                long diff = left.lastModified() - right.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+
+        for (File file : files)
+        {
+            if (file.getName().endsWith(".tmp"))
+            {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+
+            mEntries.put(file.getName(), file.length());
+            mSize += file.length();
+        }
+
+        evict(mMaxSize);
+    }
+
+    private static void writeEntry(BufferedSink sink, Entry entry) throws IOException
+    {
+        sink.writeUtf8(MAGIC).writeByte('\n');
+        sink.writeUtf8(entry.key).writeByte('\n');
+        sink.writeDecimalLong(entry.expires).writeByte('\n');
+        sink.writeUtf8(entry.etag != null ? entry.etag : "").writeByte('\n');
+        sink.writeUtf8(entry.lastModified != null ? entry.lastModified : "").writeByte('\n');
+
+        sink.writeDecimalLong(entry.headers.size()).writeByte('\n');
+        for (int i = 0; i < entry.headers.size(); i++)
+        {
+            sink.writeUtf8(entry.headers.name(i)).writeUtf8(": ").writeUtf8(entry.headers.value(i)).writeByte('\n');
+        }
+
+        sink.write(entry.body.clone(), entry.body.size());
+    }
+
+    private static Entry readEntry(BufferedSource source) throws IOException
+    {
+        if (!MAGIC.equals(source.readUtf8LineStrict()))
+        {
+            throw new IOException("Unknown cache entry format");
+        }
+
+        Entry entry = new Entry(source.readUtf8LineStrict());
+        entry.expires = Long.parseLong(source.readUtf8LineStrict());
+
+        String etag = source.readUtf8LineStrict();
+        entry.etag = etag.isEmpty() ? null : etag;
+
+        String lastModified = source.readUtf8LineStrict();
+        entry.lastModified = lastModified.isEmpty() ? null : lastModified;
+
+        Headers.Builder headers = new Headers.Builder();
+        int count = Integer.parseInt(source.readUtf8LineStrict());
+        for (int i = 0; i < count; i++)
+        {
+            headers.add(source.readUtf8LineStrict());
+        }
+        entry.headers = headers.build();
+
+        entry.body = new Buffer();
+        source.readAll(entry.body);
+
+        return entry;
+    }
+
+    /**
+     * Cached response with its validators.
+     */
+    static final class Entry
+    {
+
+        /** Cache key of request */
+        final String key;
+
+        /** Headers of response */
+        Headers headers;
+
+        /** Body of response, read it through {@link Buffer#clone()} */
+        Buffer body;
+
+        /** ETag validator, or null */
+        String etag;
+
+        /** Last-Modified validator, or null */
+        String lastModified;
+
+        /** Time in milliseconds until which entry is fresh */
+        long expires;
+
+        Entry(String key)
+        {
+            this.key = key;
+        }
+
+        boolean isFresh()
+        {
+            return System.currentTimeMillis() < expires;
+        }
+
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.concurrent.BlockingQueue;
+import pl.appformation.smash.errors.SmashError;
+
+public class SmashDispatcher extends Thread
+{
+
+    /** Queue of requests to pick from */
+    private final BlockingQueue<SmashRequest<?>> mQueue;
+
+    /** Processing steps of picked up requests */
+    private final SmashPipeline mPipeline;
+
+    /** Tells whether we should quit */
+    private volatile boolean mQuit = false;
+
+    /**
+     * Creates a new dispatch thread. You must call {@link #start()} in
+     * order to start dispatcher.
+     *
+     * @param queue Queue of incoming requests for triage
+     */
+    public SmashDispatcher(BlockingQueue<SmashRequest<?>> queue)
+    {
+        this(queue, new SmashPipeline());
+    }
+
+    /**
+     * Creates a new dispatch thread processing requests with provided pipeline.
+     *
+     * @param queue Queue of incoming requests for triage
+     * @param pipeline Processing steps of picked up requests
+     */
+    SmashDispatcher(BlockingQueue<SmashRequest<?>> queue, SmashPipeline pipeline)
+    {
+        super("SmashDispatcher");
+        this.mQueue = queue;
+        this.mPipeline = pipeline;
+    }
+
+    /**
+     * Forces this dispatcher to quit immediately.  If any requests are still in
+     * the queue, they are not guaranteed to be processed.
+     */
+    public void quit()
+    {
+        mQuit = true;
+        interrupt();
+    }
+
+    @Override
+    public void run()
+    {
+        Smash.applyBackgroundPriority();
+
+        while (true)
+        {
+            SmashRequest<?> request;
+
+            try
+            {
+                request = mQueue.take();
+            }
+            catch (InterruptedException ie)
+            {
+                if (mQuit)
+                {
+                    return;
+                }
+                continue;
+            }
+
+            if (!mPipeline.beforeNetwork(request))
+            {
+                continue;
+            }
+
+            SmashNetworkData data;
+
+            try
+            {
+                data = SmashOkHttp.perform(request);
+            }
+            catch (SmashError se)
+            {
+                mPipeline.onNetworkError(request, se);
+                continue;
+            }
+            catch (Exception e)
+            {
+                mPipeline.onNetworkError(request, new SmashError(e));
+                continue;
+            }
+
+            mPipeline.onNetworkData(request, data);
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * OkHttp event listener recording latency of response into request call was made for,
+ * and phases of call into metrics of request if it has them. Hedge call records into
+ * its own metrics, which become phases of request once it wins.
+ */
+class SmashEventListener extends EventListener
+{
+
+    /** Creates listeners only for calls of smash requests */
+    static final EventListener.Factory FACTORY = new EventListener.Factory()
+    {
+        public EventListener create(Call call)
+        {
+            SmashEventListener listener = call.request().tag(SmashEventListener.class);
+            if (listener != null)
+            {
+                return listener;
+            }
+
+            SmashRequest<?> request = call.request().tag(SmashRequest.class);
+            return request != null ? new SmashEventListener(request, request.getMetrics()) : EventListener.NONE;
+        }
+    };
+
+    /** Request call was made for */
+    private final SmashRequest<?> mRequest;
+
+    /** Metrics phases are recorded into, own metrics of hedge call until it wins, null if request has none */
+    private volatile SmashMetrics mMetrics;
+
+    /** Metrics of request hedge call was made for, null for other calls */
+    private final SmashMetrics mRequestMetrics;
+
+    /** Time in nanoseconds when request was sent, without its body until body was sent */
+    private long mSentAt;
+
+    private SmashEventListener(SmashRequest<?> request, SmashMetrics metrics)
+    {
+        this.mRequest = request;
+        this.mMetrics = metrics;
+        this.mRequestMetrics = null;
+        if (metrics != null)
+        {
+            metrics.onAttempt();
+        }
+    }
+
+    private SmashEventListener(SmashRequest<?> request, SmashMetrics hedgeMetrics, SmashMetrics requestMetrics)
+    {
+        this.mRequest = request;
+        this.mMetrics = hedgeMetrics;
+        this.mRequestMetrics = requestMetrics;
+    }
+
+    /**
+     * Creates listener of hedge call, which doesn't count as attempt of request.
+     *
+     * @param request Request hedge call is made for
+     */
+    static SmashEventListener forHedge(SmashRequest<?> request)
+    {
+        SmashMetrics requestMetrics = request.getMetrics();
+        if (requestMetrics == null)
+        {
+            return new SmashEventListener(request, null);
+        }
+
+        return new SmashEventListener(request, new SmashMetrics(requestMetrics.requestClass,
+                requestMetrics.host, requestMetrics.queuedAt), requestMetrics);
+    }
+
+    /**
+     * Makes phases of hedge call which won phases of its request, called before its
+     * response is read.
+     */
+    void onHedgeWon()
+    {
+        SmashMetrics hedgeMetrics = mMetrics;
+        if (mRequestMetrics != null && hedgeMetrics != mRequestMetrics)
+        {
+            mRequestMetrics.copyPhases(hedgeMetrics);
+            mMetrics = mRequestMetrics;
+        }
+    }
+
+    @Override
+    public void callStart(Call call)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.callStartAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.dnsStartAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.dns = System.nanoTime() - metrics.dnsStartAt;
+        }
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.connectStartAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void secureConnectStart(Call call)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.secureConnectStartAt = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.secureConnect = System.nanoTime() - metrics.secureConnectStartAt;
+        }
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.connect = System.nanoTime() - metrics.connectStartAt;
+        }
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request)
+    {
+        mSentAt = System.nanoTime();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount)
+    {
+        mSentAt = System.nanoTime();
+
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.requestBytes = byteCount;
+        }
+    }
+
+    @Override
+    public void responseHeadersStart(Call call)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.timeToFirstByte = System.nanoTime() - metrics.callStartAt;
+        }
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response)
+    {
+        // Measured from sent request, so upload of its body isn't taken for slow response
+        mRequest.setResponseLatency(System.nanoTime() - mSentAt);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount)
+    {
+        SmashMetrics metrics = mMetrics;
+        if (metrics != null)
+        {
+            metrics.responseBytes = byteCount;
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Map;
+import okio.Buffer;
+
+/**
+ * Encoder of application/x-www-form-urlencoded content, encoding the same way as
+ * {@link URLEncoder}. UTF-8 is percent-encoded straight into buffer, without temporary
+ * strings or byte arrays, other encodings fall back to {@link URLEncoder}.
+ */
+final class SmashFormEncoder
+{
+
+    /** Encoding written without temporary strings */
+    private static final String UTF_8 = "UTF-8";
+
+    /** Upper case hexadecimal digits */
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    private SmashFormEncoder()
+    {
+    }
+
+    /**
+     * Writes params to buffer as name=value pairs separated with ampersands.
+     *
+     * @param buffer Buffer to write to
+     * @param params Params to encode
+     * @param encoding Name of encoding of params, e.g. "UTF-8"
+     */
+    static void encode(Buffer buffer, Map<String, String> params, String encoding)
+    {
+        boolean utf8 = UTF_8.equalsIgnoreCase(encoding);
+        boolean first = true;
+
+        for (Map.Entry<String, String> entry : params.entrySet())
+        {
+            if (!first)
+            {
+                buffer.writeByte('&');
+            }
+            first = false;
+
+            encode(buffer, entry.getKey(), encoding, utf8);
+            buffer.writeByte('=');
+            encode(buffer, entry.getValue(), encoding, utf8);
+        }
+    }
+
+    private static void encode(Buffer buffer, String value, String encoding, boolean utf8)
+    {
+        if (!utf8)
+        {
+            try
+            {
+                buffer.writeUtf8(URLEncoder.encode(value, encoding));
+                return;
+            }
+            catch (UnsupportedEncodingException uee)
+            {
+                throw new RuntimeException("Encoding not supported: " + encoding, uee);
+            }
+        }
+
+        for (int i = 0, length = value.length(); i < length; i++)
+        {
+            int c = value.charAt(i);
+
+            if (isUnreserved(c))
+            {
+                buffer.writeByte(c);
+            }
+            else if (c == ' ')
+            {
+                buffer.writeByte('+');
+            }
+            else
+            {
+                if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+                {
+                    c = Character.toCodePoint((char) c, value.charAt(++i));
+                }
+                else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE)
+                {
+                    // Unpaired surrogate is replaced, as String.getBytes() does
+                    c = '?';
+                }
+
+                writeUtf8Escaped(buffer, c);
+            }
+        }
+    }
+
+    /**
+     * Returns true for characters {@link URLEncoder} leaves as they are.
+     */
+    private static boolean isUnreserved(int c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    /**
+     * Writes UTF-8 bytes of code point, each as %XX.
+     */
+    private static void writeUtf8Escaped(Buffer buffer, int codePoint)
+    {
+        if (codePoint < 0x80)
+        {
+            writeEscaped(buffer, codePoint);
+        }
+        else if (codePoint < 0x800)
+        {
+            writeEscaped(buffer, 0xC0 | codePoint >> 6);
+            writeEscaped(buffer, 0x80 | codePoint & 0x3F);
+        }
+        else if (codePoint < 0x10000)
+        {
+            writeEscaped(buffer, 0xE0 | codePoint >> 12);
+            writeEscaped(buffer, 0x80 | codePoint >> 6 & 0x3F);
+            writeEscaped(buffer, 0x80 | codePoint & 0x3F);
+        }
+        else
+        {
+            writeEscaped(buffer, 0xF0 | codePoint >> 18);
+            writeEscaped(buffer, 0x80 | codePoint >> 12 & 0x3F);
+            writeEscaped(buffer, 0x80 | codePoint >> 6 & 0x3F);
+            writeEscaped(buffer, 0x80 | codePoint & 0x3F);
+        }
+    }
+
+    private static void writeEscaped(Buffer buffer, int b)
+    {
+        buffer.writeByte('%');
+        buffer.writeByte(HEX_DIGITS[b >> 4 & 0xF]);
+        buffer.writeByte(HEX_DIGITS[b & 0xF]);
+    }
+
+}
@@ -17,6 +17,7 @@
 package pl.appformation.smash;
 
 import android.support.annotation.NonNull;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
@@ -30,7 +31,7 @@ import pl.appformation.smash.errors.SmashError;
  * to response of request.
  *
  * SmashFuture also accepts as optional parameters success and failed listeners.
- * These will be invoked on SmashRequest#getDeliverResponseOn() looper.
+ * These will be invoked on SmashRequest#getDeliverResponseOn() executor.
  *
  * @param <T> Type of parsed response this future handle
  */
@@ -78,7 +79,7 @@ public class SmashFuture<T> implements Future<T>, SuccessListener<T>, FailedList
     /**
      * {@inheritDoc}
      */
-    public boolean cancel(boolean mayInterruptIfRunning)
+    public synchronized boolean cancel(boolean mayInterruptIfRunning)
     {
         if (mRequest == null)
         {
@@ -87,7 +88,9 @@ public class SmashFuture<T> implements Future<T>, SuccessListener<T>, FailedList
 
         if (!isDone() && !mRequest.isCanceled())
         {
+            // Canceled request won't call listeners, wake up waiting threads now
             mRequest.cancel();
+            notifyAll();
             return true;
         }
 
@@ -110,7 +113,8 @@ public class SmashFuture<T> implements Future<T>, SuccessListener<T>, FailedList
     }
 
     /**
-     * {@inheritDoc}
+     * Waits for result at most provided time. Request keeps running after timeout,
+     * use {@link SmashRequest#setTimeout(long, TimeUnit)} to limit request itself.
      */
     public T get(long timeout, @NonNull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
     {
@@ -184,7 +188,15 @@ public class SmashFuture<T> implements Future<T>, SuccessListener<T>, FailedList
             return mResult;
         }
 
-        wait(timeout);
+        if (!isCancelled())
+        {
+            wait(timeout);
+        }
+
+        if (isCancelled() && !mResultReceived && mException == null)
+        {
+            throw new CancellationException();
+        }
 
         if (mException != null)
         {
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Hedged execution of request call, see {@link SmashHedgePolicy}. When no response arrives
+ * within hedge delay, identical call is enqueued to OkHttp next to it. The first response
+ * wins and the other call is canceled, its late response is closed. Request fails only
+ * when all started calls failed.
+ *
+ * Hedge call takes its own slot and rate limit token of host, it's skipped when there's
+ * none available. It doesn't count as attempt of request, its phases are recorded into
+ * metrics of request only when it wins.
+ */
+final class SmashHedge implements Callback
+{
+
+    /** Tag used for logging */
+    private static final String TAG = "SmashHedge";
+
+    /** Request being performed */
+    private final SmashRequest<?> mRequest;
+
+    /** Policy of request */
+    private final SmashHedgePolicy mPolicy;
+
+    /** Host of request */
+    private final String mHost;
+
+    /** Call started first */
+    private final Call mPrimary;
+
+    /** Callback of asynchronous execution, null when executed on calling thread */
+    private final Callback mCallback;
+
+    /** Time in nanoseconds when primary call started */
+    private final long mStartedAt = System.nanoTime();
+
+    /** Scheduled start of hedge call, guarded by this */
+    private ScheduledFuture<?> mTimer;
+
+    /** Hedge call, null until it's started, guarded by this */
+    private Call mHedge;
+
+    /** Host whose slot hedge call holds, null when it holds none, guarded by this */
+    private SmashHost mHedgeHost;
+
+    /** Event listener of hedge call, null until it's started */
+    private volatile SmashEventListener mHedgeListener;
+
+    /** Number of calls in flight, guarded by this */
+    private int mPending = 1;
+
+    /** True once response won or all calls failed, guarded by this */
+    private boolean mDone;
+
+    /** Winning response, guarded by this */
+    private Response mResponse;
+
+    /** Failure of the first call which failed, guarded by this */
+    private IOException mError;
+
+    private SmashHedge(SmashRequest<?> request, SmashHedgePolicy policy, Call primary, Callback callback)
+    {
+        this.mRequest = request;
+        this.mPolicy = policy;
+        this.mHost = SmashRequestQueue.hostOf(request);
+        this.mPrimary = primary;
+        this.mCallback = callback;
+    }
+
+    /**
+     * Executes call of request on calling thread, hedging it when it's slow.
+     *
+     * @return Winning response
+     * @throws IOException when all started calls failed
+     */
+    static Response execute(SmashRequest<?> request, SmashHedgePolicy policy, Call call) throws IOException
+    {
+        SmashHedge hedge = new SmashHedge(request, policy, call, null);
+        hedge.schedule();
+
+        try
+        {
+            hedge.onResponse(call, call.execute());
+        }
+        catch (IOException ioe)
+        {
+            hedge.onFailure(call, ioe);
+        }
+
+        return hedge.await();
+    }
+
+    /**
+     * Enqueues call of request, hedging it when it's slow. Callback receives winning
+     * response or failure once all started calls failed.
+     */
+    static void enqueue(SmashRequest<?> request, SmashHedgePolicy policy, Call call, Callback callback)
+    {
+        SmashHedge hedge = new SmashHedge(request, policy, call, callback);
+        hedge.schedule();
+        call.enqueue(hedge);
+    }
+
+    private void schedule()
+    {
+        mPolicy.onRequest();
+
+        SmashQueue queue = mRequest.getSmashQueue();
+        if (queue == null)
+        {
+            return;
+        }
+
+        ScheduledFuture<?> timer = queue.getScheduler().schedule(new Runnable()
+        {
+            public void run()
+            {
+                hedge();
+            }
+        }, mPolicy.getDelay(mHost), TimeUnit.NANOSECONDS);
+
+        synchronized (this)
+        {
+            if (mDone)
+            {
+                timer.cancel(false);
+                return;
+            }
+            mTimer = timer;
+        }
+    }
+
+    /**
+     * Starts hedge call, unless request already finished or budget of policy is spent.
+     */
+    private void hedge()
+    {
+        synchronized (this)
+        {
+            if (mDone || mRequest.isCanceled())
+            {
+                return;
+            }
+        }
+
+        SmashQueue queue = mRequest.getSmashQueue();
+        SmashHost host = queue != null ? queue.tryAcquireHost(mHost) : null;
+        if (host == null)
+        {
+            Smash.log(SmashLogger.DEBUG, TAG, "No slot of host left to hedge {}", mRequest);
+            return;
+        }
+
+        if (!mPolicy.tryHedge())
+        {
+            Smash.log(SmashLogger.DEBUG, TAG, "No hedge budget left for {}", mRequest);
+            host.release(-1, false);
+            return;
+        }
+
+        SmashMetrics metrics = mRequest.getMetrics();
+        SmashEventListener listener = SmashEventListener.forHedge(mRequest);
+
+        Call call;
+        try
+        {
+            call = SmashOkHttp.buildCall(mRequest, listener);
+        }
+        catch (SmashError se)
+        {
+            host.release(-1, false);
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (mDone)
+            {
+                host.release(-1, false);
+                return;
+            }
+            mHedge = call;
+            mHedgeHost = host;
+            mPending++;
+        }
+        mHedgeListener = listener;
+
+        Smash.log(SmashLogger.DEBUG, TAG, "Hedging {} after {} ms", mRequest,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartedAt));
+        if (metrics != null)
+        {
+            metrics.hedged = true;
+        }
+
+        call.enqueue(this);
+    }
+
+    public void onResponse(Call call, Response response) throws IOException
+    {
+        boolean won;
+        Call loser = null;
+
+        synchronized (this)
+        {
+            mPending--;
+            won = !mDone;
+            if (won)
+            {
+                mDone = true;
+                mResponse = response;
+                loser = call == mPrimary ? mHedge : mPrimary;
+                notifyAll();
+            }
+        }
+
+        releaseHedgeHost(call);
+
+        if (!won)
+        {
+            response.close();
+            return;
+        }
+
+        if (call != mPrimary)
+        {
+            // Canceling request aborts reading of winning response
+            mRequest.setCall(call);
+
+            SmashEventListener listener = mHedgeListener;
+            if (listener != null)
+            {
+                listener.onHedgeWon();
+            }
+        }
+
+        finish(loser);
+        mPolicy.onLatency(mHost, System.nanoTime() - mStartedAt);
+
+        if (mCallback != null)
+        {
+            mCallback.onResponse(call, response);
+        }
+    }
+
+    public void onFailure(Call call, IOException ioe)
+    {
+        releaseHedgeHost(call);
+
+        Call other;
+
+        synchronized (this)
+        {
+            mPending--;
+            if (mError == null)
+            {
+                mError = ioe;
+            }
+
+            if (mDone || (mPending > 0 && !mRequest.isCanceled()))
+            {
+                return;
+            }
+
+            mDone = true;
+            other = call == mPrimary ? mHedge : mPrimary;
+            notifyAll();
+        }
+
+        finish(other);
+
+        if (mCallback != null)
+        {
+            mCallback.onFailure(call, mError);
+        }
+    }
+
+    /**
+     * Releases slot of host held by hedge call once it finished. Outcome of request is
+     * reported by its own slot, so this one is released without it.
+     */
+    private void releaseHedgeHost(Call call)
+    {
+        SmashHost host;
+        synchronized (this)
+        {
+            if (call != mHedge || mHedgeHost == null)
+            {
+                return;
+            }
+            host = mHedgeHost;
+            mHedgeHost = null;
+        }
+
+        host.release(-1, false);
+    }
+
+    /**
+     * Cancels pending start of hedge call and call which didn't finish.
+     */
+    private void finish(Call other)
+    {
+        ScheduledFuture<?> timer;
+        synchronized (this)
+        {
+            timer = mTimer;
+        }
+
+        if (timer != null)
+        {
+            timer.cancel(false);
+        }
+        if (other != null)
+        {
+            other.cancel();
+        }
+    }
+
+    /**
+     * Waits until response won or all calls failed.
+     */
+    private synchronized Response await() throws IOException
+    {
+        while (!mDone)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                if (mHedge != null)
+                {
+                    mHedge.cancel();
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for hedge call");
+            }
+        }
+
+        if (mResponse != null)
+        {
+            return mResponse;
+        }
+
+        throw mError;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import pl.appformation.smash.SmashHistogramMetrics.Histogram;
+
+/**
+ * Policy of hedging slow requests, attached with {@link SmashRequest#setHedgePolicy(SmashHedgePolicy)}.
+ *
+ * When no response of request arrives within hedge delay, identical call is started next to
+ * it. The first response wins, the other call is canceled, so only one result is delivered.
+ * Delay is either fixed or follows observed latency percentile of host. Hedges are capped
+ * to fraction of requests of the policy, so slow host doesn't get twice the load.
+ *
+ * Only GET and HEAD requests are hedged.
+ */
+public class SmashHedgePolicy
+{
+
+    /** Number of latencies of host recorded before its percentile is used */
+    private static final int MIN_SAMPLES = 20;
+
+    /** Number of latencies after which host starts over, so percentile can follow network changes */
+    private static final int LATENCY_WINDOW = 1000;
+
+    /** Maximum number of hedges saved up while requests were fast */
+    private static final double MAX_BUDGET = 10;
+
+    /** Hedge delay in nanoseconds, used until host has enough latencies */
+    private final long mDelay;
+
+    /** Percentile of latency of host after which request is hedged, 0 for fixed delay */
+    private volatile double mPercentile = 0;
+
+    /** Maximum fraction of requests which are hedged */
+    private volatile double mMaxHedgeRatio = 0.1;
+
+    /** Number of hedges which can be started now, guarded by this */
+    private double mBudget = 1;
+
+    /** Latencies of requests by host */
+    private final ConcurrentMap<String, Histogram> mLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * Creates policy hedging requests after fixed delay.
+     *
+     * @param delay Delay after which identical call is started
+     * @param unit Unit of delay
+     */
+    public SmashHedgePolicy(long delay, TimeUnit unit)
+    {
+        mDelay = unit.toNanos(delay);
+    }
+
+    /**
+     * Sets percentile of observed latency of host after which request is hedged, e.g. 95.
+     * Fixed delay is used until host has enough latencies recorded.
+     *
+     * @param percentile Percentile between 0 and 100, 0 to always use fixed delay
+     */
+    public void setPercentile(double percentile)
+    {
+        mPercentile = percentile;
+    }
+
+    /**
+     * Sets maximum fraction of requests which are hedged. Default is 0.1.
+     *
+     * @param maxHedgeRatio Fraction between 0 and 1
+     */
+    public void setMaxHedgeRatio(double maxHedgeRatio)
+    {
+        mMaxHedgeRatio = maxHedgeRatio;
+    }
+
+    /**
+     * Returns hedge delay in nanoseconds for request to provided host.
+     */
+    long getDelay(String host)
+    {
+        double percentile = mPercentile;
+        Histogram latencies = percentile > 0 ? mLatencies.get(host) : null;
+        if (latencies == null || latencies.getCount() < MIN_SAMPLES)
+        {
+            return mDelay;
+        }
+
+        return latencies.getPercentile(percentile, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records latency of request to provided host, from start of call until the first response.
+     *
+     * @param host Host of request
+     * @param latency Latency in nanoseconds
+     */
+    void onLatency(String host, long latency)
+    {
+        Histogram latencies = mLatencies.get(host);
+        if (latencies == null || latencies.getCount() >= LATENCY_WINDOW)
+        {
+            Histogram created = new Histogram();
+            boolean swapped = latencies == null
+                    ? mLatencies.putIfAbsent(host, created) == null
+                    : mLatencies.replace(host, latencies, created);
+            latencies = swapped ? created : mLatencies.get(host);
+        }
+
+        if (latencies != null)
+        {
+            latencies.record(latency);
+        }
+    }
+
+    /**
+     * Earns fraction of hedge for started request.
+     */
+    synchronized void onRequest()
+    {
+        mBudget = Math.min(MAX_BUDGET, mBudget + mMaxHedgeRatio);
+    }
+
+    /**
+     * Returns true and takes one hedge from budget, if there's any left.
+     */
+    synchronized boolean tryHedge()
+    {
+        if (mBudget < 1)
+        {
+            return false;
+        }
+
+        mBudget -= 1;
+        return true;
+    }
+
+}
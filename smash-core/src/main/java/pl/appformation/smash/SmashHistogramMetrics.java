@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Metrics listener aggregating total time of requests into histograms per host and per
+ * request class. Recording is lock-free, so it's cheap even on delivery thread.
+ */
+public class SmashHistogramMetrics implements SmashMetricsListener
+{
+
+    /** Histograms by host */
+    private final ConcurrentMap<String, Histogram> mHosts = new ConcurrentHashMap<>();
+
+    /** Histograms by name of request class */
+    private final ConcurrentMap<String, Histogram> mRequestClasses = new ConcurrentHashMap<>();
+
+    public void onRequestMetrics(SmashMetrics metrics)
+    {
+        if (metrics.total < 0)
+        {
+            return;
+        }
+
+        histogram(mHosts, metrics.host).record(metrics.total);
+        histogram(mRequestClasses, metrics.requestClass.getName()).record(metrics.total);
+    }
+
+    private static Histogram histogram(ConcurrentMap<String, Histogram> histograms, String key)
+    {
+        Histogram histogram = histograms.get(key);
+        if (histogram == null)
+        {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null)
+            {
+                histogram = created;
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Returns histograms of total time of requests by host.
+     */
+    public @NonNull Map<String, Histogram> getByHost()
+    {
+        return Collections.unmodifiableMap(new TreeMap<>(mHosts));
+    }
+
+    /**
+     * Returns histograms of total time of requests by name of request class.
+     */
+    public @NonNull Map<String, Histogram> getByRequestClass()
+    {
+        return Collections.unmodifiableMap(new TreeMap<>(mRequestClasses));
+    }
+
+    /**
+     * Removes all recorded values.
+     */
+    public void reset()
+    {
+        mHosts.clear();
+        mRequestClasses.clear();
+    }
+
+    /**
+     * Returns report of p50, p95 and p99 per host and per request class, in milliseconds.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : getByHost().entrySet())
+        {
+            report.append("host ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : getByRequestClass().entrySet())
+        {
+            report.append("class ").append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+
+        return report.toString();
+    }
+
+    /**
+     * Log-linear histogram of durations with microsecond resolution and relative error
+     * below 1/16, values are recorded with atomic increments only.
+     */
+    public static final class Histogram
+    {
+
+        /** Number of bits of sub-buckets within each power of two */
+        private static final int SUB_BUCKET_BITS = 4;
+
+        /** Number of sub-buckets within each power of two */
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        /** Largest recorded value in microseconds, above that values are clamped (about 12 days) */
+        private static final long MAX_VALUE = (1L << 40) - 1;
+
+        /** Counts of values by bucket */
+        private final AtomicLongArray mCounts = new AtomicLongArray(index(MAX_VALUE) + 1);
+
+        /** Number of recorded values */
+        private final AtomicLong mCount = new AtomicLong();
+
+        Histogram()
+        {
+        }
+
+        private static int index(long value)
+        {
+            if (value < SUB_BUCKETS)
+            {
+                return (int) value;
+            }
+
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * Returns middle of range of values of bucket.
+         */
+        private static long valueOf(int index)
+        {
+            if (index < SUB_BUCKETS)
+            {
+                return index;
+            }
+
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+            return lowest + (1L << (exponent - SUB_BUCKET_BITS)) / 2;
+        }
+
+        /**
+         * Records duration.
+         *
+         * @param nanos Duration in nanoseconds
+         */
+        void record(long nanos)
+        {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_VALUE);
+            mCounts.incrementAndGet(index(micros));
+            mCount.incrementAndGet();
+        }
+
+        /**
+         * Returns number of recorded durations.
+         */
+        public long getCount()
+        {
+            return mCount.get();
+        }
+
+        /**
+         * Returns duration below which provided fraction of recorded durations fall.
+         *
+         * @param percentile Percentile between 0 and 100, e.g. 99 for p99
+         * @param unit Unit of returned duration
+         * @return Duration, or 0 if nothing was recorded
+         */
+        public long getPercentile(double percentile, TimeUnit unit)
+        {
+            long count = mCount.get();
+            if (count == 0)
+            {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < mCounts.length(); i++)
+            {
+                seen += mCounts.get(i);
+                if (seen >= rank)
+                {
+                    return unit.convert(valueOf(i), TimeUnit.MICROSECONDS);
+                }
+            }
+
+            return unit.convert(MAX_VALUE, TimeUnit.MICROSECONDS);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "count=" + getCount()
+                    + " p50=" + getPercentile(50, TimeUnit.MILLISECONDS)
+                    + " p95=" + getPercentile(95, TimeUnit.MILLISECONDS)
+                    + " p99=" + getPercentile(99, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.PriorityQueue;
+
+/**
+ * State of single host in {@link SmashRequestQueue}: requests waiting for it and number
+ * of requests currently using it. Fields are guarded by lock of the queue.
+ */
+final class SmashHost
+{
+
+    /** Queue this host belongs to */
+    private final SmashRequestQueue mQueue;
+
+    /** Name of host */
+    final String name;
+
+    /** Requests waiting for dispatcher, ordered by priority and sequence */
+    final PriorityQueue<SmashRequest<?>> waiting = new PriorityQueue<>();
+
+    /** Number of requests taken from queue and not released yet */
+    int active = 0;
+
+    SmashHost(SmashRequestQueue queue, String name)
+    {
+        this.mQueue = queue;
+        this.name = name;
+    }
+
+    /**
+     * Releases slot taken by request of this host, once it stopped using network.
+     *
+     * @param latency Time in nanoseconds from sending request to receiving response,
+     *                negative if request didn't reach network or its outcome says
+     *                nothing about host, e.g. it was canceled or ran out of deadline
+     * @param failed True if request failed with network error or server overload
+     */
+    void release(long latency, boolean failed)
+    {
+        mQueue.release(this, latency, failed);
+    }
+
+    /**
+     * Holds back next requests of this host, e.g. after it asked to retry later.
+     *
+     * @param delay Delay in nanoseconds
+     */
+    void pause(long delay)
+    {
+        mQueue.pause(name, delay);
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+/**
+ * Destination of Smash logs, see {@link Smash#setLogger(SmashLogger)}. Messages below
+ * level set with {@link Smash#setLogLevel(int)} are dropped before they are formatted.
+ */
+public interface SmashLogger
+{
+
+    /** Log levels, values match priorities of android.util.Log */
+    int VERBOSE = 2;
+    int DEBUG = 3;
+    int INFO = 4;
+    int WARN = 5;
+    int ERROR = 6;
+
+    /**
+     * Logs message.
+     *
+     * @param level Level of message
+     * @param tag Tag of component logging message
+     * @param message Message to log
+     */
+    void log(int level, String tag, String message);
+
+}
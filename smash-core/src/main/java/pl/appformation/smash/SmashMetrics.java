@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+/**
+ * Timings, byte counts and outcome of single request, reported to {@link SmashMetricsListener}
+ * when request finishes. Durations are in nanoseconds, -1 when phase didn't happen, e.g.
+ * there's no DNS lookup nor connect when pooled connection was reused. Phases of network
+ * come from last attempt of retried request and from winning call of hedged request.
+ */
+public class SmashMetrics
+{
+
+    /** Type of request */
+    public Class<?> requestClass;
+
+    /** Host of request URL, empty if URL is invalid */
+    public String host;
+
+    /** HTTP status code of last response, 0 if none was received */
+    public int code;
+
+    /** True if request was delivered error */
+    public boolean failed;
+
+    /** True if response was delivered from cache without network */
+    public boolean cached;
+
+    /** True if hedge call was started next to slow call, see {@link SmashHedgePolicy} */
+    public boolean hedged;
+
+    /** Number of network attempts */
+    public int attempts;
+
+    /** Time spent waiting in queue for dispatcher */
+    public long queueWait = -1;
+
+    /** Time of DNS lookup */
+    public long dns = -1;
+
+    /** Time of establishing connection, including TLS handshake */
+    public long connect = -1;
+
+    /** Time of TLS handshake */
+    public long secureConnect = -1;
+
+    /** Time from start of call to first byte of response headers */
+    public long timeToFirstByte = -1;
+
+    /** Time of parsing response, including reading streamed body */
+    public long parse = -1;
+
+    /** Time from posting result to delivery executor until it ran */
+    public long deliveryLag = -1;
+
+    /** Time from adding request to queue until it finished */
+    public long total = -1;
+
+    /** Number of bytes of request body sent, -1 if unknown */
+    public long requestBytes = -1;
+
+    /** Number of bytes of response body received, -1 if unknown */
+    public long responseBytes = -1;
+
+    /** Time in nanoseconds when request was added to queue */
+    long queuedAt;
+
+    /** Time in nanoseconds when call started */
+    long callStartAt;
+
+    /** Time in nanoseconds when DNS lookup started */
+    long dnsStartAt;
+
+    /** Time in nanoseconds when connecting started */
+    long connectStartAt;
+
+    /** Time in nanoseconds when TLS handshake started */
+    long secureConnectStartAt;
+
+    SmashMetrics(Class<?> requestClass, String host, long queuedAt)
+    {
+        this.requestClass = requestClass;
+        this.host = host;
+        this.queuedAt = queuedAt;
+    }
+
+    /**
+     * Clears phases of network before next attempt.
+     */
+    void onAttempt()
+    {
+        attempts++;
+        dns = -1;
+        connect = -1;
+        secureConnect = -1;
+        timeToFirstByte = -1;
+        requestBytes = -1;
+        responseBytes = -1;
+    }
+
+    /**
+     * Copies phases of network recorded by other call, e.g. hedge call which won.
+     */
+    void copyPhases(SmashMetrics other)
+    {
+        callStartAt = other.callStartAt;
+        dns = other.dns;
+        connect = other.connect;
+        secureConnect = other.secureConnect;
+        timeToFirstByte = other.timeToFirstByte;
+        requestBytes = other.requestBytes;
+        responseBytes = other.responseBytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SmashMetrics{" + requestClass.getSimpleName() + " " + host + " code=" + code
+                + " failed=" + failed + " cached=" + cached + " hedged=" + hedged + " attempts=" + attempts
+                + " queueWait=" + queueWait + " dns=" + dns + " connect=" + connect
+                + " secureConnect=" + secureConnect + " ttfb=" + timeToFirstByte
+                + " parse=" + parse + " deliveryLag=" + deliveryLag + " total=" + total
+                + " requestBytes=" + requestBytes + " responseBytes=" + responseBytes + "}";
+    }
+
+}
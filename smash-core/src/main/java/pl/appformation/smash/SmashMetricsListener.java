@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+/**
+ * Listener of metrics of requests, set with {@link SmashQueue#setMetricsListener(SmashMetricsListener)}.
+ */
+public interface SmashMetricsListener
+{
+
+    /**
+     * Called when request finished, on thread which finished it - usually delivery executor
+     * of request. Implementation should be quick and thread safe.
+     *
+     * @param metrics Metrics of finished request
+     */
+    void onRequestMetrics(SmashMetrics metrics);
+
+}
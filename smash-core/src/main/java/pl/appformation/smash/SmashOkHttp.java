@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.Headers;
+import okhttp3.Interceptor;
+import okhttp3.JavaNetCookieJar;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import pl.appformation.smash.errors.SmashError;
+import pl.appformation.smash.errors.SmashTimeoutError;
+import static pl.appformation.smash.SmashRequest.Method.DELETE;
+import static pl.appformation.smash.SmashRequest.Method.GET;
+import static pl.appformation.smash.SmashRequest.Method.HEAD;
+import static pl.appformation.smash.SmashRequest.Method.PATCH;
+import static pl.appformation.smash.SmashRequest.Method.POST;
+import static pl.appformation.smash.SmashRequest.Method.PUT;
+
+public class SmashOkHttp
+{
+
+    /** User-Agent header name */
+    public static final String HEADER_USER_AGENT = "User-Agent";
+
+    /** If-None-Match header name */
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+
+    /** If-Modified-Since header name */
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    /** Lock guarding modifications of clients registry */
+    private static final Object sClientsLock = new Object();
+
+    /** Registry of default OkHttpClient instances, swapped as a whole when modified */
+    private static volatile SmashClientRegistry sClients = new SmashClientRegistry(buildDefaultClient());
+
+    /**
+     * Adds {@link Interceptor} object to default {@link OkHttpClient} instance.
+     *
+     * @param interceptor Interceptor object
+     */
+    public static void addNetworkInterceptor(@NonNull Interceptor interceptor)
+    {
+        synchronized (sClientsLock)
+        {
+            sClients = sClients.withNetworkInterceptor(interceptor);
+        }
+    }
+
+    /**
+     * Builds default client with shared cookie jar accepting all cookies.
+     */
+    private static OkHttpClient buildDefaultClient()
+    {
+        CookieManager cookieManager = new CookieManager();
+        cookieManager.setCookiePolicy(CookiePolicy.ACCEPT_ALL);
+
+        return new OkHttpClient.Builder()
+                .cookieJar(new JavaNetCookieJar(cookieManager))
+                .eventListenerFactory(SmashEventListener.FACTORY)
+                .connectTimeout(60, TimeUnit.SECONDS)
+                .readTimeout(60, TimeUnit.SECONDS)
+                .writeTimeout(60, TimeUnit.SECONDS)
+                .followRedirects(true)
+                .retryOnConnectionFailure(true)
+                .build();
+    }
+
+    private static RequestBody convertBody(SmashRequest request, RequestBody body)
+    {
+        if (body != null)
+        {
+            return body;
+        }
+
+        if (request.getMethod() == DELETE)
+        {
+            return RequestBody.create(null, new byte[0]);
+        }
+
+        return RequestBody.create(MediaType.parse(request.getBodyContentType()), new byte[0]);
+    }
+
+    private static RequestBody getBody(SmashRequest request)
+    {
+        if (request.getMethod() == GET || request.getMethod() == HEAD)
+        {
+            return null;
+        }
+
+        return request.getRequestBody();
+    }
+
+    /**
+     * Creates OkHttp call for provided request, using client matching request flags.
+     * Call is attached to request, so canceling request aborts it, and times out
+     * when deadline of request passes.
+     *
+     * @param request Request to create call for
+     * @return Call ready to be executed or enqueued
+     * @throws SmashError when call can't be created
+     */
+    static @NonNull Call newCall(SmashRequest<?> request) throws SmashError
+    {
+        Call call = buildCall(request, null);
+        request.setCall(call);
+        return call;
+    }
+
+    /**
+     * Creates OkHttp call for provided request without attaching it to request,
+     * e.g. for hedge call started next to call of request.
+     *
+     * @param request Request to create call for
+     * @param listener Event listener of call recording into its own metrics, e.g. of hedge
+     *                 call, null to record into metrics of request
+     * @return Call ready to be executed or enqueued
+     * @throws SmashError when call can't be created
+     */
+    static @NonNull Call buildCall(SmashRequest<?> request, SmashEventListener listener) throws SmashError
+    {
+        Request.Builder okBuilder = new Request.Builder().url(request.getUrl()).tag(SmashRequest.class, request);
+        if (listener != null)
+        {
+            okBuilder.tag(SmashEventListener.class, listener);
+        }
+        okBuilder.addHeader(HEADER_USER_AGENT, Smash.getUserAgent());
+
+        Headers requestHeaders = request.getHeaders();
+        if (requestHeaders != null)
+        {
+            okBuilder.headers(requestHeaders);
+            if (!requestHeaders.names().contains(HEADER_USER_AGENT))
+            {
+                okBuilder.addHeader(HEADER_USER_AGENT, Smash.getUserAgent());
+            }
+        }
+
+        SmashDiskCache.Entry cacheEntry = request.getCacheEntry();
+        if (cacheEntry != null)
+        {
+            if (cacheEntry.etag != null)
+            {
+                okBuilder.header(HEADER_IF_NONE_MATCH, cacheEntry.etag);
+            }
+            if (cacheEntry.lastModified != null)
+            {
+                okBuilder.header(HEADER_IF_MODIFIED_SINCE, cacheEntry.lastModified);
+            }
+        }
+
+        RequestBody body = getBody(request);
+        switch (request.getMethod())
+        {
+            case GET:
+            {
+                okBuilder = okBuilder.get();
+                break;
+            }
+            case POST:
+            {
+                okBuilder = okBuilder.post(convertBody(request, body));
+                break;
+            }
+            case PUT:
+            {
+                okBuilder = okBuilder.put(convertBody(request, body));
+                break;
+            }
+            case DELETE:
+            {
+                okBuilder = okBuilder.delete(convertBody(request, body));
+                break;
+            }
+            case HEAD:
+            {
+                okBuilder = okBuilder.head();
+                break;
+            }
+            case PATCH:
+            {
+                okBuilder = okBuilder.patch(convertBody(request, body));
+                break;
+            }
+        }
+
+        // One-shot body can't be resent, so OkHttp mustn't retry it silently
+        boolean oneShot = false;
+        if (body instanceof SmashStreamingBody)
+        {
+            SmashStreamingBody streamingBody = (SmashStreamingBody) body;
+            oneShot = streamingBody.isOneShot();
+            request.setStreamingBody(streamingBody);
+        }
+
+        OkHttpClient client = sClients.get(request.isFollowingRedirects(),
+                request.isShouldRetryOnFailure() && !oneShot);
+        Call call = client.newCall(okBuilder.build());
+
+        long deadline = request.getDeadline();
+        if (deadline != 0)
+        {
+            call.timeout().timeout(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        return call;
+    }
+
+    /**
+     * Performs request synchronously on calling thread.
+     *
+     * @param request Request to perform
+     * @return Network data of response
+     * @throws SmashError when request failed
+     */
+    static @NonNull SmashNetworkData perform(SmashRequest<?> request) throws SmashError
+    {
+        Call call = newCall(request);
+        SmashHedgePolicy hedgePolicy = getHedgePolicy(request);
+
+        try
+        {
+            return toNetworkData(hedgePolicy != null ? SmashHedge.execute(request, hedgePolicy, call) : call.execute());
+        }
+        catch (IOException ioe)
+        {
+            throw toNetworkError(call, ioe);
+        }
+    }
+
+    /**
+     * Enqueues call of request to OkHttp dispatcher.
+     *
+     * @param request Request to perform
+     * @param call Call of request, see {@link #newCall(SmashRequest)}
+     * @param callback Callback receiving response or failure
+     */
+    static void enqueue(SmashRequest<?> request, Call call, Callback callback)
+    {
+        SmashHedgePolicy hedgePolicy = getHedgePolicy(request);
+        if (hedgePolicy != null)
+        {
+            SmashHedge.enqueue(request, hedgePolicy, call, callback);
+        }
+        else
+        {
+            call.enqueue(callback);
+        }
+    }
+
+    /**
+     * Returns hedge policy of request, or null if request can't be hedged.
+     */
+    private static SmashHedgePolicy getHedgePolicy(SmashRequest<?> request)
+    {
+        int method = request.getMethod();
+        return method == GET || method == HEAD ? request.getHedgePolicy() : null;
+    }
+
+    /**
+     * Returns OkHttp dispatcher shared by all default clients, running asynchronous calls.
+     */
+    static Dispatcher getDispatcher()
+    {
+        return sClients.get(true, true).dispatcher();
+    }
+
+    /**
+     * Sets maximum number of requests executed concurrently by asynchronous dispatching.
+     * Queues in asynchronous mode hold requests back at this limit, raised limit is
+     * picked up as requests finish.
+     *
+     * @param maxRequests Maximum number of concurrent requests
+     */
+    public static void setMaxRequests(int maxRequests)
+    {
+        sClients.get(true, true).dispatcher().setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Sets maximum number of requests for each host executed concurrently by asynchronous dispatching.
+     * Queues in asynchronous mode hold requests back at this limit, raised limit is
+     * picked up as requests finish.
+     *
+     * @param maxRequestsPerHost Maximum number of concurrent requests per host
+     */
+    public static void setMaxRequestsPerHost(int maxRequestsPerHost)
+    {
+        sClients.get(true, true).dispatcher().setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Converts OkHttp response into network data, body source is left open.
+     */
+    static @NonNull SmashNetworkData toNetworkData(Response okResponse)
+    {
+        SmashNetworkData data = new SmashNetworkData();
+        data.url = okResponse.request().url();
+        data.code = okResponse.code();
+        data.headers = okResponse.headers();
+        data.source = okResponse.body().source();
+        data.length = okResponse.body().contentLength();
+
+        return data;
+    }
+
+    /**
+     * Converts failure of call into SmashError with URL of request.
+     */
+    static @NonNull SmashError toNetworkError(Call call, IOException ioe)
+    {
+        SmashNetworkData data = new SmashNetworkData();
+        data.url = call.request().url();
+
+        if (ioe instanceof InterruptedIOException)
+        {
+            return new SmashTimeoutError(data, ioe);
+        }
+
+        return new SmashError(data, ioe);
+    }
+
+    /**
+     * Removes {@link Interceptor} object from default {@link OkHttpClient} instance.
+     *
+     * @param interceptor Interceptor object
+     */
+    public static void removeNetworkInterceptor(@NonNull Interceptor interceptor)
+    {
+        synchronized (sClientsLock)
+        {
+            sClients = sClients.withoutNetworkInterceptor(interceptor);
+        }
+    }
+
+}
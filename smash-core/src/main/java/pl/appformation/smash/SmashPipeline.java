@@ -0,0 +1,774 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okio.Buffer;
+import okio.Source;
+import pl.appformation.smash.errors.SmashCircuitOpenError;
+import pl.appformation.smash.errors.SmashError;
+import pl.appformation.smash.errors.SmashTimeoutError;
+
+/**
+ * Processing steps of request shared by blocking and asynchronous dispatchers:
+ * triage before network, parsing of network data and delivery of results.
+ */
+class SmashPipeline
+{
+
+    /** Tag used for logging */
+    private static final String TAG = "SmashDispatcher";
+
+    /** Disk cache of responses, null when caching is disabled */
+    private volatile SmashDiskCache mCache;
+
+    /** In-memory cache of parsed responses, null when disabled */
+    private volatile SmashResultCache mResultCache;
+
+    /** Circuit breaker of hosts, null if there's none */
+    private volatile SmashCircuitBreaker mBreaker;
+
+    /**
+     * Sets disk cache of responses.
+     *
+     * @param cache Disk cache, null to disable caching
+     */
+    void setCache(SmashDiskCache cache)
+    {
+        mCache = cache;
+    }
+
+    /**
+     * Sets in-memory cache of parsed responses.
+     *
+     * @param resultCache Result cache, null to disable it
+     */
+    void setResultCache(SmashResultCache resultCache)
+    {
+        mResultCache = resultCache;
+    }
+
+    /**
+     * Sets circuit breaker rejecting requests to hosts whose circuit is open.
+     *
+     * @param breaker Circuit breaker, null to disable it
+     */
+    void setCircuitBreaker(SmashCircuitBreaker breaker)
+    {
+        mBreaker = breaker;
+    }
+
+    /**
+     * Triage of request picked up from the queue.
+     *
+     * @param request Request picked up from the queue
+     * @return True if request should be performed, false if it was already finished
+     */
+    boolean beforeNetwork(SmashRequest<?> request)
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Picked up request {}", request);
+
+        if (request.isCanceled())
+        {
+            releaseHost(request);
+            request.finish();
+            return false;
+        }
+
+        if (isExpired(request, 0))
+        {
+            releaseHost(request);
+            reject(request, new SmashTimeoutError("Deadline passed before request was dispatched"));
+            return false;
+        }
+
+        // Circuit may have opened since request was queued
+        SmashCircuitBreaker breaker = mBreaker;
+        String host = request.getHost() != null ? request.getHost().name : null;
+        if (breaker != null && host != null && !breaker.allowRequest(host))
+        {
+            releaseHost(request);
+            reject(request, new SmashCircuitOpenError(host));
+            return false;
+        }
+
+        SmashDiskCache cache = mCache;
+        if (cache == null || !isCacheable(request))
+        {
+            return true;
+        }
+
+        SmashDiskCache.Entry entry = cache.get(request.getCacheKey());
+        if (entry == null)
+        {
+            cache.recordMiss();
+            return true;
+        }
+
+        if (entry.isFresh())
+        {
+            if (deliverCached(request, entry, false))
+            {
+                cache.recordHit();
+                if (request.getMetrics() != null)
+                {
+                    request.getMetrics().cached = true;
+                }
+                releaseHost(request);
+                return false;
+            }
+
+            cache.remove(entry.key);
+            return true;
+        }
+
+        // Stale entry is delivered first, network response only if it changed
+        cache.recordStale();
+        if (deliverCached(request, entry, true))
+        {
+            request.setCacheEntry(entry);
+        }
+        else
+        {
+            cache.remove(entry.key);
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses network data and delivers result of request. Closes source of data.
+     *
+     * @param request Request that was performed
+     * @param data Network data of response
+     */
+    void onNetworkData(SmashRequest<?> request, SmashNetworkData data)
+    {
+        Source networkSource = data.source;
+        long latency = request.getResponseLatency();
+        if (latency < 0)
+        {
+            // Response didn't come through network listener, e.g. from interceptor
+            latency = System.nanoTime() - request.getDispatchedAt();
+        }
+        boolean overloaded = data.code >= 500 || data.code == 429;
+
+        // Detached right away and released exactly once, as retried request
+        // might be taken again and hold another slot before this one returns
+        SmashHost host = request.getHost();
+        request.setHost(null);
+
+        if (host != null && (data.code == 429 || data.code == 503))
+        {
+            // Before host is released, so no request to it is taken meanwhile
+            pauseHost(host, data.headers);
+        }
+
+        SmashMetrics metrics = request.getMetrics();
+        if (metrics != null)
+        {
+            metrics.code = data.code;
+        }
+
+        try
+        {
+            if (request.isCanceled())
+            {
+                latency = -1;
+                request.finish();
+                return;
+            }
+
+            SmashDiskCache cache = mCache;
+            SmashDiskCache.Entry cacheEntry = request.getCacheEntry();
+
+            if (data.isNotModified() && cache != null && cacheEntry != null)
+            {
+                cache.recordNotModified();
+                cacheEntry = refreshCached(cache, cacheEntry, data.headers);
+
+                if (!request.isResponseDelivered())
+                {
+                    data = toNetworkData(request, cacheEntry);
+                }
+            }
+
+            if (data.isNotModified() && request.isResponseDelivered())
+            {
+                request.finish();
+                return;
+            }
+
+            if (data.code == 200 && cache != null && isCacheable(request) && data.source != null)
+            {
+                Buffer body = new Buffer();
+                body.writeAll(data.source);
+                data.source = body.clone();
+
+                SmashDiskCache.Entry entry = SmashDiskCache.newEntry(request.getCacheKey(), data.headers, body);
+                if (entry != null)
+                {
+                    cache.put(entry);
+                }
+
+                if (cacheEntry != null && request.isResponseDelivered() && cacheEntry.body.equals(body))
+                {
+                    // Content didn't change, cached response was already delivered
+                    request.finish();
+                    return;
+                }
+            }
+
+            if (data.code >= 400)
+            {
+                // Released before retry, so retried request can take its slot
+                if (host != null)
+                {
+                    host.release(latency, overloaded);
+                    host = null;
+                }
+
+                if (retry(request, new SmashError(data)))
+                {
+                    return;
+                }
+            }
+
+            request.setResponseDelivered(true);
+
+            if (data.code >= 400)
+            {
+                SmashError error = new SmashError(data);
+                error = request.parseNetworkError(error);
+
+                deliverError(request, error);
+                return;
+            }
+
+            SmashResponse<?> response = parse(request, data);
+            if (!response.isSuccess())
+            {
+                deliverError(request, toTimeoutError(request, response.getError(), data));
+                return;
+            }
+
+            deliverResponse(request, response);
+        }
+        catch (Exception e)
+        {
+            if (request.isCanceled())
+            {
+                // Call was aborted while response was read
+                latency = -1;
+                request.finish();
+                return;
+            }
+
+            if (isExpired(request, 0))
+            {
+                // Reading was cut off by deadline of request, not by host
+                latency = -1;
+            }
+
+            SmashError se = toTimeoutError(request, new SmashError(e), data);
+            deliverError(request, se);
+        }
+        finally
+        {
+            if (host != null)
+            {
+                host.release(latency, overloaded);
+            }
+
+            if (networkSource != null)
+            {
+                try
+                {
+                    networkSource.close();
+                }
+                catch (IOException ignored)
+                {
+                    Smash.log(SmashLogger.WARN, TAG, "Unable to close source data");
+                }
+            }
+        }
+    }
+
+    /**
+     * Delivers error of request which failed before receiving response.
+     *
+     * @param request Request that failed
+     * @param error Network error
+     */
+    void onNetworkError(SmashRequest<?> request, SmashError error)
+    {
+        if (request.isCanceled())
+        {
+            // Aborted call says nothing about health of host
+            releaseHost(request);
+            request.finish();
+            return;
+        }
+
+        if (isExpired(request, 0))
+        {
+            // Request ran out of its own deadline, which says nothing about health of host
+            releaseHost(request);
+        }
+        else
+        {
+            releaseHost(request, System.nanoTime() - request.getDispatchedAt(), true);
+        }
+
+        error = toTimeoutError(request, error, error.getData());
+        if (retry(request, error))
+        {
+            return;
+        }
+
+        try
+        {
+            error = request.parseNetworkError(error);
+        }
+        catch (Exception e)
+        {
+            error = new SmashError(e);
+        }
+
+        deliverError(request, error);
+    }
+
+    /**
+     * Releases slot of host taken by request which didn't reach network.
+     */
+    private static void releaseHost(SmashRequest<?> request)
+    {
+        releaseHost(request, -1, false);
+    }
+
+    /**
+     * Releases slot of host taken by request, so next request to the same host can be dispatched.
+     *
+     * @param latency Time in nanoseconds from sending request to receiving response,
+     *                negative if request didn't reach network
+     * @param failed True if request failed with network error or server overload
+     */
+    private static void releaseHost(SmashRequest<?> request, long latency, boolean failed)
+    {
+        SmashHost host = request.getHost();
+        if (host != null)
+        {
+            request.setHost(null);
+            host.release(latency, failed);
+        }
+    }
+
+    /**
+     * Holds back next requests to host for time it asked for with Retry-After header.
+     */
+    private static void pauseHost(SmashHost host, Headers headers)
+    {
+        long retryAfter = SmashRetryPolicy.getRetryAfter(headers);
+        if (retryAfter > 0)
+        {
+            host.pause(TimeUnit.MILLISECONDS.toNanos(retryAfter));
+        }
+    }
+
+    /**
+     * Schedules retry of failed request if its retry policy allows it.
+     *
+     * @return True if request will be retried
+     */
+    private boolean retry(SmashRequest<?> request, SmashError error)
+    {
+        SmashRetryPolicy policy = request.getRetryPolicy();
+        SmashQueue queue = request.getSmashQueue();
+        if (policy == null || queue == null || request.isCanceled() || !policy.shouldRetry(request, request.getRetries() + 1, error))
+        {
+            return false;
+        }
+
+        if (request.hasOneShotBody())
+        {
+            // Source of body was read by failed attempt, error is delivered as it is
+            Smash.log(SmashLogger.INFO, TAG, "Not retrying {}, its body can be sent only once", request);
+            return false;
+        }
+
+        long delay = policy.getDelay(request.getRetries() + 1, error);
+        if (isExpired(request, TimeUnit.MILLISECONDS.toNanos(delay)))
+        {
+            return false;
+        }
+        Smash.log(SmashLogger.INFO, TAG, "Retrying {} in {} ms after {}", request, delay, error);
+        queue.retry(request, delay);
+        return true;
+    }
+
+    /**
+     * Parses cached response and delivers it.
+     *
+     * @param request Request with cached response
+     * @param entry Cache entry
+     * @param intermediate True if request will be still revalidated with network
+     * @return True if cached response was delivered
+     */
+    private boolean deliverCached(SmashRequest<?> request, SmashDiskCache.Entry entry, boolean intermediate)
+    {
+        SmashResponse<?> response;
+
+        try
+        {
+            response = parse(request, toNetworkData(request, entry));
+        }
+        catch (Exception e)
+        {
+            Smash.log(SmashLogger.WARN, TAG, "Unable to parse cached response for {}: {}", request, e);
+            return false;
+        }
+
+        if (!response.isSuccess())
+        {
+            return false;
+        }
+
+        request.setResponseDelivered(true);
+
+        if (intermediate)
+        {
+            deliverIntermediateResponse(request, response);
+        }
+        else
+        {
+            deliverResponse(request, response);
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses network data, measuring time of parsing when metrics are collected.
+     */
+    private SmashResponse<?> parse(SmashRequest<?> request, SmashNetworkData data) throws IOException
+    {
+        SmashMetrics metrics = request.getMetrics();
+        if (metrics == null)
+        {
+            return parseCached(request, data);
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            return parseCached(request, data);
+        }
+        finally
+        {
+            metrics.parse = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Parses network data, reusing result parsed earlier from identical payload when
+     * request type allows it.
+     */
+    private SmashResponse<?> parseCached(SmashRequest<?> request, SmashNetworkData data) throws IOException
+    {
+        SmashResultCache resultCache = mResultCache;
+        if (resultCache == null || data.code != 200 || data.source == null || !request.isShouldCacheResult())
+        {
+            return request.parseResponse(data);
+        }
+
+        Buffer body;
+        if (data.source instanceof Buffer)
+        {
+            body = (Buffer) data.source;
+        }
+        else
+        {
+            body = new Buffer();
+            body.writeAll(data.source);
+            data.source = body;
+        }
+
+        String etag = data.headers != null ? data.headers.get("ETag") : null;
+        String key = request.getClass().getName() + ' ' + request.getCacheKey() + ' '
+                + (etag != null ? etag : body.md5().hex());
+        long size = body.size();
+
+        SmashResponse<?> response = resultCache.get(key);
+        if (response != null)
+        {
+            body.clear();
+            return response;
+        }
+
+        response = request.parseResponse(data);
+        if (response.isSuccess())
+        {
+            resultCache.put(key, response, size);
+        }
+
+        return response;
+    }
+
+    /**
+     * Updates freshness of cache entry with headers of 304 Not Modified response.
+     */
+    private SmashDiskCache.Entry refreshCached(SmashDiskCache cache, SmashDiskCache.Entry entry, Headers headers)
+    {
+        Headers.Builder merged = entry.headers.newBuilder();
+        for (int i = 0; i < headers.size(); i++)
+        {
+            merged.set(headers.name(i), headers.value(i));
+        }
+
+        SmashDiskCache.Entry refreshed = SmashDiskCache.newEntry(entry.key, merged.build(), entry.body);
+        if (refreshed == null)
+        {
+            cache.remove(entry.key);
+            return entry;
+        }
+
+        cache.put(refreshed);
+        return refreshed;
+    }
+
+    private static SmashNetworkData toNetworkData(SmashRequest<?> request, SmashDiskCache.Entry entry)
+    {
+        SmashNetworkData data = new SmashNetworkData();
+        data.url = HttpUrl.parse(request.getUrl());
+        data.code = 200;
+        data.headers = entry.headers;
+        data.source = entry.body.clone();
+        data.length = entry.body.size();
+
+        return data;
+    }
+
+    /**
+     * Converts error into {@link SmashTimeoutError} when it was caused by timeout or deadline
+     * of request, which aborts call with plain socket error when body is being read. Failures
+     * past deadline have the same type wherever they happened.
+     */
+    private static SmashError toTimeoutError(SmashRequest<?> request, SmashError error, SmashNetworkData data)
+    {
+        if (error instanceof SmashTimeoutError)
+        {
+            return error;
+        }
+
+        if (error.getCause() instanceof InterruptedIOException || isExpired(request, 0))
+        {
+            return new SmashTimeoutError(data, error.getCause());
+        }
+
+        return error;
+    }
+
+    /**
+     * Returns true if deadline of request passes within provided time.
+     *
+     * @param within Time from now in nanoseconds
+     */
+    private static boolean isExpired(SmashRequest<?> request, long within)
+    {
+        long deadline = request.getDeadline();
+        return deadline != 0 && System.nanoTime() + within - deadline >= 0;
+    }
+
+    private static boolean isCacheable(SmashRequest<?> request)
+    {
+        return request.isShouldCache() && request.getMethod() == SmashRequest.Method.GET;
+    }
+
+    private void deliverError(final SmashRequest request, final SmashError error)
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Delivering failed response for {}", request);
+        if (request.getMetrics() != null)
+        {
+            request.getMetrics().failed = true;
+        }
+        List<SmashRequest<?>> coalescedRequests = getCoalesced(request, true);
+
+        deliver(request, new Runnable()
+        {
+            public void run()
+            {
+                if (!request.isCanceled())
+                {
+                    request.deliverError(error);
+                }
+                request.finish();
+            }
+        });
+
+        for (final SmashRequest coalesced : coalescedRequests)
+        {
+            deliver(coalesced, new Runnable()
+            {
+                public void run()
+                {
+                    if (!coalesced.isCanceled())
+                    {
+                        coalesced.deliverError(error);
+                    }
+                    coalesced.finish();
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers error of request failed before it reached network, e.g. because its deadline
+     * passed or circuit of its host is open. Coalesced requests don't share its fate,
+     * they are queued again when it finishes.
+     *
+     * @param request Request which won't be performed
+     * @param error Error delivered to request
+     */
+    void reject(final SmashRequest request, final SmashError error)
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Rejecting {}: {}", request, error.getMessage());
+        if (request.getMetrics() != null)
+        {
+            request.getMetrics().failed = true;
+        }
+
+        deliver(request, new Runnable()
+        {
+            public void run()
+            {
+                if (!request.isCanceled())
+                {
+                    request.deliverError(error);
+                }
+                request.finish();
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverResponse(final SmashRequest request, final SmashResponse response)
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Delivering success response for {}", request);
+        List<SmashRequest<?>> coalescedRequests = getCoalesced(request, true);
+
+        deliver(request, new Runnable()
+        {
+            public void run()
+            {
+                if (!request.isCanceled())
+                {
+                    request.deliverResponse(response);
+                }
+                request.finish();
+            }
+        });
+
+        for (final SmashRequest coalesced : coalescedRequests)
+        {
+            deliver(coalesced, new Runnable()
+            {
+                public void run()
+                {
+                    if (!coalesced.isCanceled())
+                    {
+                        coalesced.deliverResponse(response);
+                    }
+                    coalesced.finish();
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverIntermediateResponse(final SmashRequest request, final SmashResponse response)
+    {
+        Smash.log(SmashLogger.DEBUG, TAG, "Delivering cached response for {}", request);
+        List<SmashRequest<?>> coalescedRequests = getCoalesced(request, false);
+
+        deliver(request, new Runnable()
+        {
+            public void run()
+            {
+                if (!request.isCanceled())
+                {
+                    request.deliverResponse(response);
+                }
+            }
+        });
+
+        for (final SmashRequest coalesced : coalescedRequests)
+        {
+            coalesced.setResponseDelivered(true);
+            deliver(coalesced, new Runnable()
+            {
+                public void run()
+                {
+                    if (!coalesced.isCanceled())
+                    {
+                        coalesced.deliverResponse(response);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns requests waiting for result of provided one, see {@link SmashQueue#setCoalescing(boolean)}.
+     */
+    private static List<SmashRequest<?>> getCoalesced(SmashRequest<?> request, boolean detach)
+    {
+        SmashQueue queue = request.getSmashQueue();
+        if (queue == null)
+        {
+            return Collections.emptyList();
+        }
+
+        return queue.getCoalesced(request, detach);
+    }
+
+    private void deliver(SmashRequest request, Runnable runnable)
+    {
+        final SmashMetrics metrics = request.getMetrics();
+        if (metrics != null)
+        {
+            final Runnable delivery = runnable;
+            final long postedAt = System.nanoTime();
+            runnable = new Runnable()
+            {
+                public void run()
+                {
+                    metrics.deliveryLag = System.nanoTime() - postedAt;
+                    delivery.run();
+                }
+            };
+        }
+
+        request.getDeliverResponseOn().execute(runnable);
+    }
+
+}
@@ -0,0 +1,675 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import pl.appformation.smash.errors.SmashCircuitOpenError;
+
+public class SmashQueue
+{
+
+    /** Default thread pool size */
+    private static final int THREAD_POOL_SIZE = 5;
+
+    /** Delivers responses directly on thread which finished request */
+    private static final Executor DIRECT_DELIVERY = new Executor()
+    {
+        public void execute(Runnable runnable)
+        {
+            runnable.run();
+        }
+    };
+
+    /**
+     * Registry of all requests currently being processed by this SmashQueue. A Request
+     * will be in registry if it is waiting in any queue or currently being processed by
+     * any dispatcher.
+     */
+    private final SmashRequestRegistry mCurrentRequests = new SmashRequestRegistry();
+
+    /**
+     * Requests waiting for result of identical request queued or in flight, by coalescing
+     * key of that request. Guarded by itself.
+     */
+    private final Map<String, List<SmashRequest<?>>> mCoalesced = new HashMap<>();
+
+    /** Indicate if identical requests are coalesced */
+    private volatile boolean mCoalescing = false;
+
+    /** Executor on which responses are delivered by default */
+    private final Executor mDefaultDelivery;
+
+    /** Number of dispatcher threads, or parser threads in asynchronous mode */
+    private final int mThreadPoolSize;
+
+    /** Array of dispatchers */
+    private SmashDispatcher[] mDispatchers = new SmashDispatcher[0];
+
+    /** Adaptive limit of concurrent requests, null if concurrency is fixed */
+    private SmashAdaptiveLimit mAdaptiveLimit;
+
+    /** Dispatcher used instead of dispatchers array in asynchronous mode */
+    private SmashAsyncDispatcher mAsyncDispatcher;
+
+    /** Indicate if requests are dispatched asynchronously */
+    private boolean mAsyncDispatching = false;
+
+    /** Processing steps shared by dispatchers of this queue */
+    private final SmashPipeline mPipeline = new SmashPipeline();
+
+    /** Priority queue of requests */
+    private final SmashRequestQueue mQueue = new SmashRequestQueue();
+
+    /** Circuit breaker of hosts, null if there's none */
+    private volatile SmashCircuitBreaker mCircuitBreaker;
+
+    /** Rejects requests waiting for host whose circuit opened */
+    private final SmashCircuitBreaker.Listener mCircuitListener = new SmashCircuitBreaker.Listener()
+    {
+        public void onStateChanged(String host, SmashCircuitBreaker.State oldState, SmashCircuitBreaker.State newState)
+        {
+            if (newState == SmashCircuitBreaker.State.OPEN)
+            {
+                for (SmashRequest<?> request : mQueue.drain(host))
+                {
+                    mPipeline.reject(request, new SmashCircuitOpenError(host));
+                }
+            }
+        }
+    };
+
+    /** Listener of metrics of requests, null when metrics aren't collected */
+    private volatile SmashMetricsListener mMetricsListener;
+
+    /** Scheduler of delayed work, like retries, created on first use */
+    private ScheduledExecutorService mScheduler;
+
+    /** Indicate if queue is running */
+    private boolean mRunning = false;
+
+    /** Sequence number */
+    private final AtomicInteger mSequence = new AtomicInteger();
+
+    /**
+     * Creates queue with default (5) thread pool size, delivering responses on main thread
+     * on Android (see {@code SmashAndroid.install()}) and on dispatcher threads elsewhere.
+     */
+    public SmashQueue()
+    {
+        this(THREAD_POOL_SIZE);
+    }
+
+    /**
+     * Creates queue with provided thread pool size, delivering responses on main thread
+     * on Android (see {@code SmashAndroid.install()}) and on dispatcher threads elsewhere.
+     *
+     * @param threadPoolSize Threads to use in pool
+     */
+    public SmashQueue(int threadPoolSize)
+    {
+        this(threadPoolSize, defaultDelivery());
+    }
+
+    /**
+     * Creates queue with default (5) thread pool size.
+     *
+     * @param defaultDelivery Executor on which responses are delivered by default
+     */
+    public SmashQueue(Executor defaultDelivery)
+    {
+        this(THREAD_POOL_SIZE, defaultDelivery);
+    }
+
+    /**
+     * Creates queue with provided thread pool size.
+     *
+     * @param threadPoolSize Threads to use in pool
+     * @param defaultDelivery Executor on which responses are delivered by default
+     */
+    public SmashQueue(int threadPoolSize, Executor defaultDelivery)
+    {
+        mThreadPoolSize = threadPoolSize;
+        mDefaultDelivery = defaultDelivery;
+    }
+
+    /**
+     * Returns default executor of platform, or direct delivery on dispatcher threads.
+     */
+    private static Executor defaultDelivery()
+    {
+        Executor defaultDelivery = Smash.getDefaultDelivery();
+        return defaultDelivery != null ? defaultDelivery : DIRECT_DELIVERY;
+    }
+
+    /**
+     * Add request to queue, and returns passed-in request.
+     * Response will be delivered on default executor of this queue.
+     *
+     * @param request Request to service
+     * @return The passed-in request
+     */
+    public <T> SmashRequest<T> add(SmashRequest<T> request)
+    {
+        return add(request, mDefaultDelivery);
+    }
+
+    /**
+     * Add request to queue, and returns passed-in request.
+     * Response will be delivered on provided executor.
+     *
+     * @param request Request to service
+     * @param deliverResponseOn Executor on which response will be delivered
+     * @return The passed-in request
+     */
+    public <T> SmashRequest<T> add(SmashRequest<T> request, Executor deliverResponseOn)
+    {
+        request.setSmashQueue(this);
+        request.setDeliverResponseOn(deliverResponseOn);
+        request.startDeadline(System.nanoTime());
+        request.markQueued(mSequence.incrementAndGet());
+
+        String host = SmashRequestQueue.hostOf(request);
+        if (mMetricsListener != null)
+        {
+            request.setMetrics(new SmashMetrics(request.getClass(), host, System.nanoTime()));
+        }
+
+        mCurrentRequests.add(request, host);
+
+        enqueue(request);
+        return request;
+    }
+
+    /**
+     * Puts request into priority queue, or attaches it to identical request
+     * already queued or in flight when coalescing is enabled.
+     */
+    private void enqueue(SmashRequest<?> request)
+    {
+        if (isRejected(request))
+        {
+            return;
+        }
+
+        String key = mCoalescing ? request.getCoalescingKey() : null;
+        if (key != null)
+        {
+            synchronized (mCoalesced)
+            {
+                List<SmashRequest<?>> coalesced = mCoalesced.get(key);
+                if (coalesced != null)
+                {
+                    coalesced.add(request);
+                    return;
+                }
+
+                mCoalesced.put(key, new ArrayList<SmashRequest<?>>());
+                request.setCoalescedKey(key);
+            }
+        }
+
+        mQueue.add(request);
+    }
+
+    /**
+     * Rejects request if circuit of its host is open.
+     *
+     * @param request Request about to be queued
+     * @return True if request was rejected
+     */
+    private boolean isRejected(SmashRequest<?> request)
+    {
+        SmashCircuitBreaker breaker = mCircuitBreaker;
+        if (breaker == null)
+        {
+            return false;
+        }
+
+        String host = SmashRequestQueue.hostOf(request);
+        if (breaker.allowRequest(host))
+        {
+            return false;
+        }
+
+        mPipeline.reject(request, new SmashCircuitOpenError(host));
+        return true;
+    }
+
+    /**
+     * Returns requests coalesced into provided one, which still wait for its result.
+     *
+     * @param request Request performed on behalf of coalesced requests
+     * @param detach True if coalesced requests will receive final result and
+     *               identical requests added from now on shouldn't attach anymore
+     * @return Coalesced requests
+     */
+    List<SmashRequest<?>> getCoalesced(SmashRequest<?> request, boolean detach)
+    {
+        synchronized (mCoalesced)
+        {
+            String key = request.getCoalescedKey();
+            List<SmashRequest<?>> coalesced = key != null ? mCoalesced.get(key) : null;
+            if (coalesced == null)
+            {
+                return Collections.emptyList();
+            }
+
+            if (detach)
+            {
+                mCoalesced.remove(key);
+                request.setCoalescedKey(null);
+                return coalesced;
+            }
+
+            return new ArrayList<>(coalesced);
+        }
+    }
+
+    /**
+     * Cancel all current requests.
+     */
+    public void cancelAll()
+    {
+        for (SmashRequest<?> request : mCurrentRequests.getAll())
+        {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Cancels all current requests with provided tag, see {@link SmashRequest#setTag(Object)}.
+     * Requests in flight are aborted, requests waiting in queue are dropped when picked up.
+     *
+     * @param tag Tag of requests to cancel
+     */
+    public void cancelAll(@NonNull Object tag)
+    {
+        for (SmashRequest<?> request : mCurrentRequests.getByTag(tag))
+        {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Cancels all current requests to provided host, e.g. when user leaves part of app
+     * backed by it. Requests in flight are aborted, requests waiting in queue are dropped
+     * when picked up.
+     *
+     * @param host Host name, e.g. "api.example.com"
+     */
+    public void cancelAllToHost(@NonNull String host)
+    {
+        for (SmashRequest<?> request : mCurrentRequests.getByHost(host))
+        {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Performs required actions when request finish his work.
+     *
+     * @param request Request that finished
+     */
+    <T> void finishRequest(SmashRequest<T> request)
+    {
+        mCurrentRequests.remove(request);
+
+        SmashMetrics metrics = request.getMetrics();
+        SmashMetricsListener metricsListener = mMetricsListener;
+        if (metrics != null && metricsListener != null)
+        {
+            metrics.total = System.nanoTime() - metrics.queuedAt;
+            metricsListener.onRequestMetrics(metrics);
+        }
+
+        // Request finished without handing its result over, e.g. it was canceled
+        for (SmashRequest<?> coalesced : getCoalesced(request, true))
+        {
+            if (coalesced.isCanceled() || coalesced.isResponseDelivered())
+            {
+                coalesced.finish();
+            }
+            else
+            {
+                enqueue(coalesced);
+            }
+        }
+    }
+
+    /**
+     * Takes slot of host for call started next to request, see {@link SmashRequestQueue#tryAcquire(String)}.
+     *
+     * @param host Name of host
+     * @return Host whose slot was taken, null if there's no slot available now
+     */
+    SmashHost tryAcquireHost(String host)
+    {
+        return mQueue.tryAcquire(host);
+    }
+
+    /**
+     * Returns scheduler of delayed work of this queue, backed by single daemon thread.
+     */
+    synchronized ScheduledExecutorService getScheduler()
+    {
+        if (mScheduler == null)
+        {
+            mScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+            {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "SmashScheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return mScheduler;
+    }
+
+    /**
+     * Adds failed request back to queue after provided delay, without holding any dispatcher
+     * thread meanwhile. Retried request keeps its sequence number, so it doesn't go behind
+     * requests of the same priority added later.
+     *
+     * @param request Request to retry
+     * @param delay Delay in milliseconds
+     */
+    void retry(final SmashRequest<?> request, long delay)
+    {
+        request.incrementRetries();
+        getScheduler().schedule(new Runnable()
+        {
+            public void run()
+            {
+                request.markQueued(request.getSequence());
+                if (!isRejected(request))
+                {
+                    mQueue.add(request);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sets disk cache of responses. Only requests with {@link SmashRequest#setShouldCache(boolean)}
+     * enabled are cached.
+     *
+     * @param cache Disk cache, null to disable caching
+     */
+    public void setCache(SmashDiskCache cache)
+    {
+        mPipeline.setCache(cache);
+    }
+
+    /**
+     * Sets in-memory cache of parsed responses. Only request types returning true
+     * from {@link SmashRequest#isShouldCacheResult()} are cached.
+     *
+     * @param resultCache Result cache, null to disable it
+     */
+    public void setResultCache(SmashResultCache resultCache)
+    {
+        mPipeline.setResultCache(resultCache);
+    }
+
+    /**
+     * Sets whether identical requests should be coalesced. Request added while identical
+     * one is queued or in flight doesn't hit network, but receives result of that request
+     * on its own executor. Canceling one of coalesced requests doesn't affect the others.
+     *
+     * @param coalescing True to coalesce identical requests
+     * @see SmashRequest#getCoalescingKey()
+     */
+    public void setCoalescing(boolean coalescing)
+    {
+        mCoalescing = coalescing;
+    }
+
+    /**
+     * Sets adaptive limit of requests performed concurrently by this queue. Limit widens while
+     * responses come fast and narrows when latency rises or requests fail, within its bounds.
+     * In blocking mode as many dispatcher threads as maximum of the limit are started,
+     * but only as many as current limit perform requests.
+     *
+     * Takes effect on next {@link #start()}.
+     *
+     * @param adaptiveLimit Adaptive limit, null for fixed concurrency of thread pool size
+     */
+    public void setAdaptiveConcurrency(SmashAdaptiveLimit adaptiveLimit)
+    {
+        mAdaptiveLimit = adaptiveLimit;
+    }
+
+    /**
+     * Sets limit of requests to single host performed concurrently by this queue. Dispatchers
+     * pick up requests of other hosts meanwhile, so slow host can't take all of them.
+     * Default is no limit. Applies to both blocking and asynchronous dispatching, on top
+     * of {@link SmashOkHttp#setMaxRequestsPerHost(int)}.
+     *
+     * @param maxRequestsPerHost Maximum number of concurrent requests per host
+     */
+    public void setMaxRequestsPerHost(int maxRequestsPerHost)
+    {
+        mQueue.setMaxRequestsPerHost(maxRequestsPerHost);
+    }
+
+    /**
+     * Sets limit of requests to provided host performed concurrently by this queue,
+     * overriding limit set with {@link #setMaxRequestsPerHost(int)}.
+     *
+     * @param host Name of host, e.g. "api.example.com"
+     * @param maxRequests Maximum number of concurrent requests, zero or less to use default limit
+     */
+    public void setMaxRequestsPerHost(@NonNull String host, int maxRequests)
+    {
+        mQueue.setMaxRequestsPerHost(host, maxRequests);
+    }
+
+    /**
+     * Sets rate limit of all requests of this queue. Requests above the rate wait in queue
+     * without taking dispatcher. Host answering with 429 or 503 and Retry-After header gets
+     * no requests for time it asked for, whether or not rate limit is set.
+     *
+     * @param rateLimit Rate limit, null to disable it
+     */
+    public void setRateLimit(SmashRateLimit rateLimit)
+    {
+        mQueue.setRateLimit(rateLimit);
+    }
+
+    /**
+     * Sets rate limit of requests to provided host, on top of rate limit of all requests.
+     *
+     * @param host Name of host, e.g. "api.example.com"
+     * @param rateLimit Rate limit, null to disable it
+     * @see #setRateLimit(SmashRateLimit)
+     */
+    public void setRateLimit(@NonNull String host, SmashRateLimit rateLimit)
+    {
+        mQueue.setRateLimit(host, rateLimit);
+    }
+
+    /**
+     * Sets circuit breaker of hosts. While circuit of host is open, its requests fail with
+     * {@link SmashCircuitOpenError} without taking dispatcher, including those waiting
+     * in queue when it opened. Applies to both blocking and asynchronous dispatching.
+     *
+     * @param circuitBreaker Circuit breaker, null to disable it
+     */
+    public void setCircuitBreaker(SmashCircuitBreaker circuitBreaker)
+    {
+        SmashCircuitBreaker old = mCircuitBreaker;
+        if (old != null)
+        {
+            old.removeListener(mCircuitListener);
+        }
+
+        mCircuitBreaker = circuitBreaker;
+        if (circuitBreaker != null)
+        {
+            circuitBreaker.addListener(mCircuitListener);
+        }
+
+        mPipeline.setCircuitBreaker(circuitBreaker);
+        mQueue.setCircuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * Returns numbers of requests waiting for dispatcher, by host. Hosts without
+     * waiting requests are left out.
+     *
+     * @return Map of host names to queue depths
+     */
+    public @NonNull Map<String, Integer> getQueueDepths()
+    {
+        return mQueue.getDepths();
+    }
+
+    /**
+     * Returns number of current requests, waiting in queue or in flight.
+     */
+    public int getRequestCount()
+    {
+        return mCurrentRequests.size();
+    }
+
+    /**
+     * Returns number of current requests to provided host, waiting in queue or in flight.
+     *
+     * @param host Host name, e.g. "api.example.com"
+     */
+    public int getRequestCount(@NonNull String host)
+    {
+        return mCurrentRequests.sizeByHost(host);
+    }
+
+    /**
+     * Sets listener of metrics of requests: time spent in queue, DNS lookup, connecting,
+     * time to first byte, parsing and delivery, byte counts and status codes. Metrics
+     * are collected for requests added after listener was set.
+     *
+     * @param metricsListener Listener of metrics, e.g. {@link SmashHistogramMetrics}, null to stop collecting them
+     */
+    public void setMetricsListener(SmashMetricsListener metricsListener)
+    {
+        mMetricsListener = metricsListener;
+    }
+
+    /**
+     * Sets interval after which request waiting in queue is promoted to next priority,
+     * so requests with low priority can't starve forever under load. Default is 5 seconds.
+     *
+     * @param interval Aging interval, zero disables aging
+     * @param unit Unit of interval
+     */
+    public void setPriorityAging(long interval, TimeUnit unit)
+    {
+        mQueue.setAgingInterval(interval, unit);
+    }
+
+    /**
+     * Sets whether requests should be dispatched asynchronously. In asynchronous mode
+     * requests are handed to OkHttp {@link okhttp3.Dispatcher} instead of blocking
+     * dispatcher threads, so network concurrency is limited by OkHttp global and per host
+     * limits. Requests wait in this queue until OkHttp has room to run them, so priorities
+     * hold until call starts. Thread pool size of this queue is then used for parser threads.
+     *
+     * Takes effect on next {@link #start()}.
+     *
+     * @param asyncDispatching True to dispatch requests asynchronously
+     */
+    public void setAsyncDispatching(boolean asyncDispatching)
+    {
+        mAsyncDispatching = asyncDispatching;
+    }
+
+    /**
+     * Starts the queue.
+     * Starts all dispatchers.
+     */
+    public void start()
+    {
+        if (mRunning)
+        {
+            stop();
+        }
+
+        mQueue.setAdaptiveLimit(mAdaptiveLimit);
+        mQueue.setOkHttpDispatcher(mAsyncDispatching ? SmashOkHttp.getDispatcher() : null);
+
+        if (mAsyncDispatching)
+        {
+            mAsyncDispatcher = new SmashAsyncDispatcher(mQueue, mPipeline, mThreadPoolSize);
+            mAsyncDispatcher.start();
+        }
+        else
+        {
+            int dispatchers = mAdaptiveLimit != null ? mAdaptiveLimit.getMaxLimit() : mThreadPoolSize;
+            mDispatchers = new SmashDispatcher[dispatchers];
+            for (int i = 0; i < mDispatchers.length; i++)
+            {
+                mDispatchers[i] = new SmashDispatcher(mQueue, mPipeline);
+                mDispatchers[i].start();
+            }
+        }
+
+        mRunning = true;
+    }
+
+    /**
+     * Stops the queue.
+     * Stops all dispatchers.
+     */
+    public void stop()
+    {
+        if (!mRunning)
+        {
+            return;
+        }
+
+        for (int i = 0; i < mDispatchers.length; i++)
+        {
+            if (mDispatchers[i] != null)
+            {
+                mDispatchers[i].quit();
+                mDispatchers[i] = null;
+            }
+        }
+
+        if (mAsyncDispatcher != null)
+        {
+            mAsyncDispatcher.quit();
+            mAsyncDispatcher = null;
+        }
+
+        mRunning = false;
+    }
+
+}
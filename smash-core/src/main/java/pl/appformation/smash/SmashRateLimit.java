@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting rate of requests dispatched by {@link SmashQueue}, either all of them
+ * or requests of single host. Bucket holds up to burst tokens and is refilled at constant rate,
+ * every dispatched request takes one token. Requests wait in queue while there's no token,
+ * without taking dispatcher.
+ *
+ * The same instance set for several hosts is one bucket shared by them.
+ */
+public class SmashRateLimit
+{
+
+    /** Tokens added per nanosecond */
+    private final double mTokensPerNano;
+
+    /** Maximum number of tokens */
+    private final int mBurst;
+
+    /** Number of tokens left at time of last refill */
+    private double mTokens;
+
+    /** Time in nanoseconds of last refill */
+    private long mRefilledAt;
+
+    /**
+     * Creates rate limit with full bucket.
+     *
+     * @param permitsPerSecond Rate at which requests can be dispatched in the long run
+     * @param burst Number of requests which can be dispatched at once after idle period
+     */
+    public SmashRateLimit(double permitsPerSecond, int burst)
+    {
+        if (permitsPerSecond <= 0 || burst < 1)
+        {
+            throw new IllegalArgumentException("Invalid rate " + permitsPerSecond + " or burst " + burst);
+        }
+
+        mTokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        mBurst = burst;
+        mTokens = burst;
+        mRefilledAt = System.nanoTime();
+    }
+
+    /**
+     * Returns rate at which requests can be dispatched in the long run.
+     */
+    public double getPermitsPerSecond()
+    {
+        return mTokensPerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns number of requests which can be dispatched at once after idle period.
+     */
+    public int getBurst()
+    {
+        return mBurst;
+    }
+
+    /**
+     * Returns time in nanoseconds until next token is available, 0 if there's one now.
+     *
+     * @param now Current time in nanoseconds
+     */
+    synchronized long getDelay(long now)
+    {
+        refill(now);
+        return mTokens >= 1 ? 0 : (long) Math.ceil((1 - mTokens) / mTokensPerNano);
+    }
+
+    /**
+     * Takes token for dispatched request, available according to {@link #getDelay(long)}.
+     *
+     * @param now Current time in nanoseconds
+     */
+    synchronized void acquire(long now)
+    {
+        refill(now);
+        mTokens -= 1;
+    }
+
+    private void refill(long now)
+    {
+        long elapsed = now - mRefilledAt;
+        if (elapsed > 0)
+        {
+            mTokens = Math.min(mBurst, mTokens + elapsed * mTokensPerNano);
+            mRefilledAt = now;
+        }
+    }
+
+}
@@ -0,0 +1,884 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ * Copyright (C) 2011 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.Okio;
+import pl.appformation.smash.SmashResponse.FailedListener;
+import pl.appformation.smash.SmashResponse.SuccessListener;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Base abstract class for all requests.
+ *
+ * @param <T> Type of parsed response this request provide
+ */
+public abstract class SmashRequest<T> implements Comparable<SmashRequest<T>>
+{
+
+    /** Default parameters encoding */
+    private static final String PARAMS_ENCODING = "UTF-8";
+
+    /** Support request methods */
+    public interface Method
+    {
+        int GET = 0;
+        int POST = 1;
+        int PUT = 2;
+        int DELETE = 3;
+        int HEAD = 4;
+        int PATCH = 5;
+    }
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({Method.GET, Method.POST, Method.PUT, Method.DELETE, Method.HEAD, Method.PATCH})
+    public @interface MethodRes {}
+
+    /** Request priorities, requests with higher priority are dispatched first */
+    public enum Priority
+    {
+        LOW,
+        NORMAL,
+        HIGH,
+        IMMEDIATE
+    }
+
+    /** Cache entry of this request, set when stale entry is revalidated */
+    private SmashDiskCache.Entry mCacheEntry;
+
+    /** Network call of this request in flight, null if there's none */
+    private volatile Call mCall;
+
+    /** Streaming body of call in flight, closed when request finishes */
+    private volatile SmashStreamingBody mStreamingBody;
+
+    /** Whether or not this request has been canceled */
+    private volatile boolean mCanceled = false;
+
+    /** Key under which identical requests wait for result of this one, null if they don't */
+    private String mCoalescedKey;
+
+    /** Priority assigned when request was added to queue, might be raised by aging */
+    private Priority mQueuedPriority = Priority.NORMAL;
+
+    /** Time in nanoseconds since request waits on its current queued priority */
+    private long mQueuedPrioritySince;
+
+    /** Time in nanoseconds when request was taken from queue by dispatcher */
+    private long mDispatchedAt;
+
+    /** Time in nanoseconds from sending request to receiving headers of its response, -1 if not received */
+    private volatile long mResponseLatency = -1;
+
+    /** Time in nanoseconds after which request is abandoned, 0 if it has no deadline */
+    private long mDeadline;
+
+    /** Executor on which response is delivered */
+    private Executor mDeliverResponseOn;
+
+    /** Headers of this request */
+    private Headers mHeaders;
+
+    /** Host whose slot this request holds while using network, null if it holds none */
+    private volatile SmashHost mHost;
+
+    /** Metrics of this request, null when queue has no metrics listener */
+    private SmashMetrics mMetrics;
+
+    /** HTTP request method */
+    private final @MethodRes int mMethod;
+
+    /** Priority of this request */
+    private Priority mPriority = Priority.NORMAL;
+
+    /** Successful request listener */
+    private SuccessListener<T> mSuccessListener;
+
+    /** Failed request listener */
+    private FailedListener mFailedListener;
+
+    /** Whether or not response of this request has been delivered */
+    private boolean mResponseDelivered = false;
+
+    /** Number of retries already scheduled */
+    private int mRetries = 0;
+
+    /** Retry policy of this request, null if failures are delivered right away */
+    private SmashRetryPolicy mRetryPolicy;
+
+    /** Hedge policy of this request, null if slow request isn't hedged */
+    private SmashHedgePolicy mHedgePolicy;
+
+    /** Whether or not response of this request should be cached */
+    private boolean mShouldCache = false;
+
+    /** Sequence number of this request, used for FIFO ordering within priority */
+    private int mSequence;
+
+    /** SmashQueue that handles this request */
+    private SmashQueue mSmashQueue;
+
+    /** Tag of this request, used to cancel requests in bulk */
+    private Object mTag;
+
+    /** Time in nanoseconds since adding to queue in which request must complete, 0 if unlimited */
+    private long mTimeout;
+
+    /** Request URL */
+    private String mUrl;
+
+    /**
+     * Creates a new request.
+     *
+     * @param method Method to use in request
+     * @param successListener Successful request listener
+     * @param failedListener Failed request listener
+     */
+    public SmashRequest(@MethodRes int method, SuccessListener<T> successListener, FailedListener failedListener)
+    {
+        this.mMethod = method;
+        this.mSuccessListener = successListener;
+        this.mFailedListener = failedListener;
+    }
+
+    /**
+     * Creates a new request with URL value.
+     *
+     * @param method Method to use in request
+     * @param url URL to use in request
+     * @param successListener Successful request listener
+     * @param failedListener Failed request listener
+     */
+    public SmashRequest(@MethodRes int method, String url, SuccessListener<T> successListener, FailedListener failedListener)
+    {
+        this(method, successListener, failedListener);
+        this.mUrl = url;
+    }
+
+    /**
+     * Cancels request. Request in flight is aborted at once, including reading and parsing
+     * of its response, and none of its listeners is called afterwards.
+     */
+    public void cancel()
+    {
+        this.mCanceled = true;
+
+        Call call = mCall;
+        if (call != null)
+        {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Default implementation of delivering error on failed response listener.
+     *
+     * @param error SmashError
+     */
+    public void deliverError(SmashError error)
+    {
+        mFailedListener.onFailedResponse(error);
+    }
+
+    /**
+     * Default implementation of delivering response to success listener.
+     *
+     * @param response Response
+     */
+    public void deliverResponse(SmashResponse<T> response)
+    {
+        mSuccessListener.onResponse(response.getResult());
+    }
+
+    /**
+     * Notifies the request queue that this request has finished (successfully or with error).
+     */
+    void finish()
+    {
+        mCall = null;
+        setStreamingBody(null);
+        mFailedListener = null;
+        mSuccessListener = null;
+
+        if (mSmashQueue != null)
+        {
+            mSmashQueue.finishRequest(this);
+        }
+    }
+
+    /**
+     * Sets streaming body of call in flight, closing body of previous attempt.
+     */
+    final void setStreamingBody(SmashStreamingBody body)
+    {
+        SmashStreamingBody previous = mStreamingBody;
+        mStreamingBody = body;
+        if (previous != null && previous != body)
+        {
+            previous.close();
+        }
+    }
+
+    /**
+     * Returns true if body of call in flight can be written only once, so it can't be retried.
+     */
+    final boolean hasOneShotBody()
+    {
+        SmashStreamingBody body = mStreamingBody;
+        return body != null && body.isOneShot();
+    }
+
+    /**
+     * Returns cache entry which is revalidated by this request.
+     */
+    final SmashDiskCache.Entry getCacheEntry()
+    {
+        return mCacheEntry;
+    }
+
+    /**
+     * Returns key under which identical requests are coalesced into this one.
+     */
+    final String getCoalescedKey()
+    {
+        return mCoalescedKey;
+    }
+
+    /**
+     * Returns key identifying identical requests, which can share single network round
+     * trip and parsed result when queue coalesces requests. Default key consists of request
+     * type, method, URL and headers, only GET and HEAD requests are coalesced.
+     *
+     * @return Coalescing key, or null if this request should never be coalesced
+     */
+    protected @Nullable String getCoalescingKey()
+    {
+        if (getMethod() != Method.GET && getMethod() != Method.HEAD)
+        {
+            return null;
+        }
+
+        Headers headers = getHeaders();
+        return getClass().getName() + ' ' + getMethod() + ' ' + getUrl() + '\n' + (headers != null ? headers : "");
+    }
+
+    /**
+     * Returns key of this request in cache. Default key is request URL.
+     */
+    protected String getCacheKey()
+    {
+        return getUrl();
+    }
+
+    /**
+     * Returns time in nanoseconds after which request is abandoned, 0 if it has no deadline.
+     */
+    final long getDeadline()
+    {
+        return mDeadline;
+    }
+
+    /**
+     * Returns time in nanoseconds when request was taken from queue by dispatcher.
+     */
+    final long getDispatchedAt()
+    {
+        return mDispatchedAt;
+    }
+
+    /**
+     * Returns time in nanoseconds from sending request to receiving headers of its response,
+     * or -1 if no response was received since request was dispatched.
+     */
+    final long getResponseLatency()
+    {
+        return mResponseLatency;
+    }
+
+    /**
+     * Returns executor on which to deliver response.
+     *
+     * @return Executor
+     */
+    final Executor getDeliverResponseOn()
+    {
+        return mDeliverResponseOn;
+    }
+
+    /**
+     * Returns BufferedSource as body for use in POST, PUT, DELETE, PATCH.
+     */
+    protected BufferedSource getBody()
+    {
+        Map<String, String> params = getParams();
+        if (params != null && params.size() > 0)
+        {
+            Buffer buffer = new Buffer();
+            SmashFormEncoder.encode(buffer, params, getParamsEncoding());
+
+            return buffer;
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns body for use in POST, PUT, DELETE, PATCH as it will be sent by OkHttp.
+     * Default implementation streams {@link #getBody()}, override this method to send
+     * files or content written by producer, see {@link SmashStreamingBody}.
+     */
+    protected @Nullable RequestBody getRequestBody()
+    {
+        BufferedSource body = getBody();
+        if (body == null)
+        {
+            return null;
+        }
+
+        return SmashStreamingBody.create(MediaType.parse(getBodyContentType()), body);
+    }
+
+    /**
+     * Returns the content type of the POST or PUT body. Default response is
+     * application/x-www-form-urlencoded; charset=UTF-8
+     *
+     * This method should be overridden along with getBody().
+     */
+    public String getBodyContentType()
+    {
+        return "application/x-www-form-urlencoded; charset=" + getParamsEncoding();
+    }
+
+    /**
+     * Returns headers of this request. Returned headers, if not null, will overwrite default headers.
+     * This also pertain to User-Agent header.
+     */
+    public @Nullable Headers getHeaders()
+    {
+        return mHeaders;
+    }
+
+    /**
+     * Returns hedge policy of this request.
+     *
+     * @return Hedge policy, or null if slow request isn't hedged
+     */
+    public @Nullable SmashHedgePolicy getHedgePolicy()
+    {
+        return mHedgePolicy;
+    }
+
+    /**
+     * Returns host whose slot this request holds.
+     */
+    final SmashHost getHost()
+    {
+        return mHost;
+    }
+
+    /**
+     * Returns metrics of this request, null when they aren't collected.
+     */
+    final SmashMetrics getMetrics()
+    {
+        return mMetrics;
+    }
+
+    /**
+     * Returns request method.
+     */
+    public @MethodRes int getMethod()
+    {
+        return mMethod;
+    }
+
+    /**
+     * Returns priority of this request. Subclasses can override this method
+     * to provide priority based on request content.
+     */
+    public Priority getPriority()
+    {
+        return mPriority;
+    }
+
+    /**
+     * Returns priority this request is currently ordered with in the queue.
+     */
+    final Priority getQueuedPriority()
+    {
+        return mQueuedPriority;
+    }
+
+    /**
+     * Returns time in nanoseconds since request waits on its current queued priority.
+     */
+    final long getQueuedPrioritySince()
+    {
+        return mQueuedPrioritySince;
+    }
+
+    /**
+     * Returns a Map&lt;String, String&gt; of parameters to be used for a POST or PUT request.
+     * Note that you can directly override {@link #getBody()} for custom data.
+     */
+    protected Map<String, String> getParams()
+    {
+        return null;
+    }
+
+    /**
+     * Returns which encoding should be used when converting POST or PUT parameters.
+     */
+    protected String getParamsEncoding()
+    {
+        return PARAMS_ENCODING;
+    }
+
+    /**
+     * Returns number of retries already scheduled.
+     */
+    final int getRetries()
+    {
+        return mRetries;
+    }
+
+    /**
+     * Returns retry policy of this request.
+     *
+     * @return Retry policy, or null if failures are delivered right away
+     */
+    public @Nullable SmashRetryPolicy getRetryPolicy()
+    {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Returns sequence number assigned by the queue.
+     */
+    final int getSequence()
+    {
+        return mSequence;
+    }
+
+    /**
+     * Returns {@link SmashQueue} for use in Request
+     */
+    protected SmashQueue getSmashQueue()
+    {
+        return mSmashQueue;
+    }
+
+    /**
+     * Returns tag of this request, null if it has none.
+     */
+    public @Nullable Object getTag()
+    {
+        return mTag;
+    }
+
+    /**
+     * Returns request URL.
+     */
+    protected String getUrl()
+    {
+        return mUrl;
+    }
+
+    /**
+     * Increments number of retries already scheduled.
+     */
+    final void incrementRetries()
+    {
+        mRetries++;
+    }
+
+    /**
+     * Returns true if this request has been canceled.
+     */
+    public boolean isCanceled()
+    {
+        return mCanceled;
+    }
+
+    /**
+     * Returns true if underlying {@link okhttp3.OkHttpClient} should follow redirects
+     */
+    protected boolean isFollowingRedirects()
+    {
+        return true;
+    }
+
+    /**
+     * Returns true if request is already in queue.
+     */
+    private boolean isInQueue()
+    {
+        return mSmashQueue != null;
+    }
+
+    /**
+     * Returns true if this request has been canceled.
+     */
+    public boolean isResponseDelivered()
+    {
+        return mResponseDelivered;
+    }
+
+    /**
+     * Returns true if response of this request should be cached. Only GET
+     * requests are cached, and only when queue has cache set.
+     */
+    public boolean isShouldCache()
+    {
+        return mShouldCache;
+    }
+
+    /**
+     * Returns true if parsed result of this request type can be reused for identical
+     * payload, when queue has result cache set. Cached results are shared between
+     * requests, so they must not be modified.
+     */
+    public boolean isShouldCacheResult()
+    {
+        return false;
+    }
+
+    /**
+     * Returns true if silent retry should occur on first failure
+     */
+    public boolean isShouldRetryOnFailure()
+    {
+        return true;
+    }
+
+    /**
+     * Marks request as queued, stamping its sequence number and current priority.
+     *
+     * @param sequence Sequence number assigned by the queue
+     */
+    final void markQueued(int sequence)
+    {
+        mSequence = sequence;
+        mQueuedPriority = getPriority();
+        mQueuedPrioritySince = System.nanoTime();
+    }
+
+    /**
+     * Starts deadline of request when it's added to the queue. Deadline isn't restarted
+     * when request is queued again, e.g. for retry.
+     *
+     * @param now Current time in nanoseconds
+     */
+    final void startDeadline(long now)
+    {
+        mDeadline = mTimeout > 0 ? now + mTimeout : 0;
+    }
+
+    /**
+     * Subclasses can override this method to parse network error response
+     * and return a more specific error.
+     *
+     * The default implementation just returns the passed SmashError.
+     *
+     * @param error the error retrieved from the network
+     * @return SmashError augmented with additional information
+     */
+    protected SmashError parseNetworkError(SmashError error)
+    {
+        try
+        {
+            if (error.getData() != null && error.getData().source != null)
+            {
+                error.setContent(Okio.buffer(error.getData().source).readUtf8());
+            }
+        }
+        catch (IOException ioe)
+        {
+            throw new RuntimeException("Unable to parse error response", ioe);
+        }
+
+        return error;
+    }
+
+    /**
+     * Subclasses must implement this to parse the raw network response
+     * and return an appropriate response type. This method will be
+     * called from a worker thread.  The response will not be delivered
+     * if you return null.
+     *
+     * @param data Response network data
+     * @return The parsed response, or null in the case of an error
+     */
+    protected abstract SmashResponse<T> parseResponse(SmashNetworkData data);
+
+    /**
+     * Sets cache entry which is revalidated by this request.
+     */
+    final void setCacheEntry(SmashDiskCache.Entry cacheEntry)
+    {
+        mCacheEntry = cacheEntry;
+    }
+
+    /**
+     * Sets key under which identical requests are coalesced into this one.
+     */
+    final void setCoalescedKey(String coalescedKey)
+    {
+        mCoalescedKey = coalescedKey;
+    }
+
+    /**
+     * Sets time in nanoseconds when request was taken from queue by dispatcher.
+     */
+    final void setDispatchedAt(long dispatchedAt)
+    {
+        mDispatchedAt = dispatchedAt;
+        mResponseLatency = -1;
+    }
+
+    /**
+     * Sets time in nanoseconds from sending request to receiving headers of its response.
+     */
+    final void setResponseLatency(long responseLatency)
+    {
+        mResponseLatency = responseLatency;
+    }
+
+    /**
+     * Sets executor on which response will be delivered.
+     */
+    final void setDeliverResponseOn(Executor deliverResponseOn)
+    {
+        mDeliverResponseOn = deliverResponseOn;
+    }
+
+    /**
+     * Sets host whose slot this request holds.
+     */
+    final void setHost(SmashHost host)
+    {
+        mHost = host;
+    }
+
+    /**
+     * Sets headers for this request. By default headers are null, they can be either
+     * overridden by getHeaders() with custom logic or added as parameter to this function.
+     *
+     * @param headers New headers.
+     */
+    public void setHeaders(Headers headers)
+    {
+        this.mHeaders = headers;
+    }
+
+    /**
+     * Sets metrics collected for this request.
+     */
+    final void setMetrics(SmashMetrics metrics)
+    {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Sets whether response was delivered.
+     */
+    final void setResponseDelivered(boolean responseDelivered)
+    {
+        this.mResponseDelivered = responseDelivered;
+    }
+
+    /**
+     * Sets retry policy of this request. Retried request keeps its place among requests
+     * of the same priority.
+     *
+     * @param retryPolicy Retry policy, null to deliver failures right away
+     */
+    public final void setRetryPolicy(@Nullable SmashRetryPolicy retryPolicy)
+    {
+        this.mRetryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets hedge policy of this request. Applies to GET and HEAD requests only, as identical
+     * call may be started while the first one is still in flight.
+     *
+     * @param hedgePolicy Hedge policy, null to perform single call
+     */
+    public final void setHedgePolicy(@Nullable SmashHedgePolicy hedgePolicy)
+    {
+        this.mHedgePolicy = hedgePolicy;
+    }
+
+    /**
+     * Sets network call of this request. Call is canceled right away if request already was.
+     *
+     * @param call Call of this request in flight
+     */
+    final void setCall(Call call)
+    {
+        this.mCall = call;
+
+        if (mCanceled)
+        {
+            call.cancel();
+        }
+    }
+
+    /**
+     * Sets whether response of this request should be cached.
+     *
+     * @param shouldCache True to cache response
+     */
+    public final void setShouldCache(boolean shouldCache)
+    {
+        this.mShouldCache = shouldCache;
+    }
+
+    /**
+     * Sets SmashQueue that handles this request. Once requests is added to queue, this
+     * method will be invoked.
+     *
+     * @param smashQueue SmashQueue that handles this request
+     */
+    void setSmashQueue(SmashQueue smashQueue)
+    {
+        this.mSmashQueue = smashQueue;
+    }
+
+    /**
+     * Sets priority of this request. This method should not be used after request is added to the queue.
+     *
+     * @param priority New priority
+     * @throws UnsupportedOperationException when request is already in queue
+     */
+    public final void setPriority(@NonNull Priority priority)
+    {
+        if (isInQueue())
+        {
+            throw new UnsupportedOperationException("Can't change priority, request is already in the queue");
+        }
+
+        this.mPriority = priority;
+    }
+
+    /**
+     * Raises queued priority of this request by one level, up to {@link Priority#HIGH}.
+     * Used by queue aging, so requests with low priority can't starve forever.
+     *
+     * @param now Current time in nanoseconds
+     */
+    final void promoteQueuedPriority(long now)
+    {
+        if (mQueuedPriority.ordinal() < Priority.HIGH.ordinal())
+        {
+            mQueuedPriority = Priority.values()[mQueuedPriority.ordinal() + 1];
+        }
+
+        mQueuedPrioritySince = now;
+    }
+
+    /**
+     * Sets tag of this request, requests with equal tags can be canceled together with
+     * {@link SmashQueue#cancelAll(Object)}. This method should not be used after request
+     * is added to the queue.
+     *
+     * @param tag Tag, e.g. screen which issued request
+     * @throws UnsupportedOperationException when request is already in queue
+     */
+    public final void setTag(@Nullable Object tag)
+    {
+        if (isInQueue())
+        {
+            throw new UnsupportedOperationException("Can't change tag, request is already in the queue");
+        }
+
+        this.mTag = tag;
+    }
+
+    /**
+     * Sets time in which request must complete, counted from adding it to queue. It covers
+     * waiting in queue, retries, network call and reading of response. Request which waited
+     * in queue past its deadline fails without network call, request in flight is aborted
+     * by OkHttp call timeout. Either way it fails with
+     * {@link pl.appformation.smash.errors.SmashTimeoutError}. This method
+     * should not be used after request is added to the queue.
+     *
+     * @param timeout Timeout, 0 for no deadline
+     * @param unit Unit of timeout
+     * @throws UnsupportedOperationException when request is already in queue
+     */
+    public final void setTimeout(long timeout, @NonNull TimeUnit unit)
+    {
+        if (isInQueue())
+        {
+            throw new UnsupportedOperationException("Can't change timeout, request is already in the queue");
+        }
+
+        this.mTimeout = unit.toNanos(timeout);
+    }
+
+    /**
+     * Sets request URL. This method should not be used after request is added to the queue.
+     *
+     * @param url New URL
+     * @throws UnsupportedOperationException when request is already in queue
+     */
+    public final void setUrl(String url)
+    {
+        if (isInQueue())
+        {
+            throw new UnsupportedOperationException("Can't change URL, request is already in the queue");
+        }
+
+        this.mUrl = url;
+    }
+
+    /**
+     * Compares two SmashRequest objects. Order of check
+     * - priority
+     * - sequence
+     */
+    public int compareTo(@NonNull SmashRequest<T> another)
+    {
+        if (mQueuedPriority != another.mQueuedPriority)
+        {
+            return another.mQueuedPriority.ordinal() - mQueuedPriority.ordinal();
+        }
+
+        if (mSequence == another.mSequence)
+        {
+            return 0;
+        }
+
+        return mSequence < another.mSequence ? -1 : 1;
+    }
+
+}
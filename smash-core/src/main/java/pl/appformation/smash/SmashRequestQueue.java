@@ -0,0 +1,965 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import okhttp3.Dispatcher;
+import okhttp3.HttpUrl;
+import pl.appformation.smash.SmashRequest.Priority;
+
+/**
+ * Queue of requests waiting for dispatcher. Requests are grouped by host, within host
+ * they are ordered by priority and then by sequence number they were added with.
+ *
+ * Request with highest priority is taken first, ties between hosts are resolved
+ * round-robin, so burst of requests to one host doesn't delay requests to others.
+ * Host with as many requests taken and not released yet as its limit is skipped,
+ * until one of its requests is released with {@link SmashHost#release(long, boolean)}.
+ * With adaptive limit set, no request is taken while number of all taken requests
+ * reaches that limit. With circuit breaker set, host whose circuit is half-open
+ * has only one request taken at a time, being probe of its recovery.
+ *
+ * In asynchronous mode global and per host limits of OkHttp {@link Dispatcher} are
+ * enforced the same way, so calls handed to OkHttp run at once instead of waiting in
+ * its own queue, out of order of priorities.
+ *
+ * Host is also skipped while it's paused after asking to retry later and, with rate
+ * limits set, while its token bucket or bucket of whole queue is empty. Dispatchers then
+ * wait only until the earliest pause ends or token is available.
+ *
+ * To prevent starvation, requests waiting longer than aging interval are promoted
+ * one priority level (up to {@link Priority#HIGH}). Aging is checked lazily when
+ * dispatchers take requests from the queue, at most twice per interval.
+ */
+class SmashRequestQueue extends AbstractQueue<SmashRequest<?>> implements BlockingQueue<SmashRequest<?>>
+{
+
+    /** Default aging interval in milliseconds */
+    private static final long DEFAULT_AGING_INTERVAL = 5000;
+
+    /** Value of throttle when no request is held back by rate limit */
+    private static final long NOT_THROTTLED = Long.MAX_VALUE;
+
+    /** Lock guarding all state of queue and its hosts */
+    private final ReentrantLock mLock = new ReentrantLock();
+
+    /** Signalled when request is added or host slot is released */
+    private final Condition mAvailable = mLock.newCondition();
+
+    /** Hosts with waiting or active requests, by name */
+    private final Map<String, SmashHost> mHosts = new HashMap<>();
+
+    /** Hosts with waiting requests, in round-robin order */
+    private final LinkedList<SmashHost> mRoundRobin = new LinkedList<>();
+
+    /** Limits of concurrent requests set for particular hosts */
+    private final Map<String, Integer> mHostLimits = new HashMap<>();
+
+    /** Limit of concurrent requests for hosts without own limit */
+    private int mMaxRequestsPerHost = Integer.MAX_VALUE;
+
+    /** Adaptive limit of all concurrent requests, null if there's none */
+    private volatile SmashAdaptiveLimit mLimit;
+
+    /** OkHttp dispatcher running calls in asynchronous mode, null in blocking mode */
+    private volatile Dispatcher mOkHttpDispatcher;
+
+    /** Circuit breaker of hosts, null if there's none */
+    private volatile SmashCircuitBreaker mBreaker;
+
+    /** Rate limit of all requests, null if there's none */
+    private SmashRateLimit mRateLimit;
+
+    /** Rate limits set for particular hosts */
+    private final Map<String, SmashRateLimit> mHostRateLimits = new HashMap<>();
+
+    /** Times in nanoseconds until which hosts are paused, by name */
+    private final Map<String, Long> mPausedUntil = new HashMap<>();
+
+    /** Time in nanoseconds until request held back by rate limit can be taken, set by {@link #next()} */
+    private long mThrottle = NOT_THROTTLED;
+
+    /** Number of requests taken and not released yet */
+    private int mActive = 0;
+
+    /** Number of waiting requests */
+    private int mCount = 0;
+
+    /** Aging interval in nanoseconds, zero or less disables aging */
+    private volatile long mAgingInterval = TimeUnit.MILLISECONDS.toNanos(DEFAULT_AGING_INTERVAL);
+
+    /** Time in nanoseconds of next aging check */
+    private long mNextAging = System.nanoTime();
+
+    /**
+     * Sets aging interval after which waiting request is promoted to higher priority.
+     *
+     * @param interval Interval, zero disables aging
+     * @param unit Unit of interval
+     */
+    void setAgingInterval(long interval, TimeUnit unit)
+    {
+        mAgingInterval = unit.toNanos(interval);
+    }
+
+    /**
+     * Sets adaptive limit of all concurrent requests.
+     *
+     * @param limit Adaptive limit, null to disable it
+     */
+    void setAdaptiveLimit(SmashAdaptiveLimit limit)
+    {
+        mLock.lock();
+        try
+        {
+            mLimit = limit;
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets OkHttp dispatcher whose limits cap requests taken in asynchronous mode.
+     *
+     * @param dispatcher OkHttp dispatcher, null in blocking mode
+     */
+    void setOkHttpDispatcher(Dispatcher dispatcher)
+    {
+        mLock.lock();
+        try
+        {
+            mOkHttpDispatcher = dispatcher;
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets circuit breaker fed with outcomes of requests of hosts.
+     *
+     * @param breaker Circuit breaker, null to disable it
+     */
+    void setCircuitBreaker(SmashCircuitBreaker breaker)
+    {
+        mLock.lock();
+        try
+        {
+            mBreaker = breaker;
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets rate limit of all requests.
+     *
+     * @param rateLimit Rate limit, null to disable it
+     */
+    void setRateLimit(SmashRateLimit rateLimit)
+    {
+        mLock.lock();
+        try
+        {
+            mRateLimit = rateLimit;
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets rate limit of requests to provided host.
+     *
+     * @param host Name of host
+     * @param rateLimit Rate limit, null to disable it
+     */
+    void setRateLimit(@NonNull String host, SmashRateLimit rateLimit)
+    {
+        mLock.lock();
+        try
+        {
+            if (rateLimit != null)
+            {
+                mHostRateLimits.put(host, rateLimit);
+            }
+            else
+            {
+                mHostRateLimits.remove(host);
+            }
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Holds back requests to provided host for given time.
+     *
+     * @param host Name of host
+     * @param delay Delay in nanoseconds
+     */
+    void pause(String host, long delay)
+    {
+        mLock.lock();
+        try
+        {
+            long until = System.nanoTime() + delay;
+            Long paused = mPausedUntil.get(host);
+            if (paused == null || until - paused > 0)
+            {
+                mPausedUntil.put(host, until);
+            }
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets limit of concurrent requests for hosts without own limit.
+     *
+     * @param maxRequestsPerHost Maximum number of concurrent requests
+     */
+    void setMaxRequestsPerHost(int maxRequestsPerHost)
+    {
+        mLock.lock();
+        try
+        {
+            mMaxRequestsPerHost = maxRequestsPerHost;
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Sets limit of concurrent requests for provided host.
+     *
+     * @param host Name of host
+     * @param maxRequests Maximum number of concurrent requests, zero or less to use default limit
+     */
+    void setMaxRequestsPerHost(@NonNull String host, int maxRequests)
+    {
+        mLock.lock();
+        try
+        {
+            if (maxRequests > 0)
+            {
+                mHostLimits.put(host, maxRequests);
+            }
+            else
+            {
+                mHostLimits.remove(host);
+            }
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns numbers of waiting requests by host.
+     */
+    Map<String, Integer> getDepths()
+    {
+        mLock.lock();
+        try
+        {
+            Map<String, Integer> depths = new HashMap<>();
+            for (SmashHost host : mRoundRobin)
+            {
+                depths.put(host.name, host.waiting.size());
+            }
+            return depths;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns name of host request is grouped by.
+     */
+    static String hostOf(SmashRequest<?> request)
+    {
+        HttpUrl url = request.getUrl() != null ? HttpUrl.parse(request.getUrl()) : null;
+        return url != null ? url.host() : "";
+    }
+
+    private int limitOf(String host, int maxPerHost)
+    {
+        SmashCircuitBreaker breaker = mBreaker;
+        if (breaker != null && breaker.isHalfOpen(host))
+        {
+            return 1;
+        }
+
+        Integer limit = mHostLimits.get(host);
+        return Math.min(limit != null ? limit : mMaxRequestsPerHost, maxPerHost);
+    }
+
+    /**
+     * Returns time in nanoseconds until request of host can be taken according to its
+     * rate limit and pause, 0 if it can be taken now. Must be called with lock held.
+     */
+    private long throttleOf(String host, long now)
+    {
+        Long paused = mPausedUntil.get(host);
+        if (paused != null)
+        {
+            if (paused - now > 0)
+            {
+                return paused - now;
+            }
+            mPausedUntil.remove(host);
+        }
+
+        SmashRateLimit rateLimit = mHostRateLimits.get(host);
+        return rateLimit != null ? rateLimit.getDelay(now) : 0;
+    }
+
+    /**
+     * Waits until request might be available, at most for provided time or until
+     * request held back by rate limit can be taken. Must be called with lock held.
+     *
+     * @param nanos Maximum time to wait in nanoseconds
+     * @return Estimate of time left of provided one
+     */
+    private long await(long nanos) throws InterruptedException
+    {
+        long throttle = mThrottle;
+        if (throttle < nanos)
+        {
+            return nanos - (throttle - mAvailable.awaitNanos(throttle));
+        }
+
+        if (nanos == NOT_THROTTLED)
+        {
+            mAvailable.await();
+            return nanos;
+        }
+
+        return mAvailable.awaitNanos(nanos);
+    }
+
+    @Override
+    public boolean offer(@NonNull SmashRequest<?> request)
+    {
+        String name = hostOf(request);
+
+        mLock.lock();
+        try
+        {
+            SmashHost host = mHosts.get(name);
+            if (host == null)
+            {
+                host = new SmashHost(this, name);
+                mHosts.put(name, host);
+            }
+
+            if (host.waiting.isEmpty())
+            {
+                mRoundRobin.addLast(host);
+            }
+
+            host.waiting.offer(request);
+            mCount++;
+            mAvailable.signal();
+            return true;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(SmashRequest<?> request, long timeout, @NonNull TimeUnit unit)
+    {
+        return offer(request);
+    }
+
+    @Override
+    public void put(@NonNull SmashRequest<?> request)
+    {
+        offer(request);
+    }
+
+    @Override
+    public SmashRequest<?> take() throws InterruptedException
+    {
+        mLock.lockInterruptibly();
+        try
+        {
+            SmashRequest<?> request;
+            while ((request = next()) == null)
+            {
+                await(NOT_THROTTLED);
+            }
+            return request;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public SmashRequest<?> poll()
+    {
+        mLock.lock();
+        try
+        {
+            return next();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public SmashRequest<?> poll(long timeout, @NonNull TimeUnit unit) throws InterruptedException
+    {
+        long nanos = unit.toNanos(timeout);
+
+        mLock.lockInterruptibly();
+        try
+        {
+            SmashRequest<?> request;
+            while ((request = next()) == null)
+            {
+                if (nanos <= 0)
+                {
+                    return null;
+                }
+                nanos = await(nanos);
+            }
+            return request;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Takes request with highest priority among hosts below their limit, marking
+     * it as active for its host. Must be called with lock held.
+     */
+    private SmashRequest<?> next()
+    {
+        promoteStarving();
+        mThrottle = NOT_THROTTLED;
+
+        SmashAdaptiveLimit limit = mLimit;
+        if (limit != null && mActive >= limit.getLimit())
+        {
+            return null;
+        }
+
+        int maxPerHost = Integer.MAX_VALUE;
+        Dispatcher okHttpDispatcher = mOkHttpDispatcher;
+        if (okHttpDispatcher != null)
+        {
+            if (mActive >= okHttpDispatcher.getMaxRequests())
+            {
+                return null;
+            }
+            maxPerHost = okHttpDispatcher.getMaxRequestsPerHost();
+        }
+
+        long now = System.nanoTime();
+        SmashRateLimit rateLimit = mRateLimit;
+        if (rateLimit != null && !mRoundRobin.isEmpty())
+        {
+            long delay = rateLimit.getDelay(now);
+            if (delay > 0)
+            {
+                mThrottle = delay;
+                return null;
+            }
+        }
+
+        SmashHost best = null;
+        int bestPriority = -1;
+
+        for (SmashHost host : mRoundRobin)
+        {
+            if (host.active >= limitOf(host.name, maxPerHost))
+            {
+                continue;
+            }
+
+            long delay = throttleOf(host.name, now);
+            if (delay > 0)
+            {
+                mThrottle = Math.min(mThrottle, delay);
+                continue;
+            }
+
+            int priority = host.waiting.peek().getQueuedPriority().ordinal();
+            if (priority > bestPriority)
+            {
+                best = host;
+                bestPriority = priority;
+            }
+        }
+
+        if (best == null)
+        {
+            return null;
+        }
+
+        if (rateLimit != null)
+        {
+            rateLimit.acquire(now);
+        }
+        SmashRateLimit hostRateLimit = mHostRateLimits.get(best.name);
+        if (hostRateLimit != null)
+        {
+            hostRateLimit.acquire(now);
+        }
+        mThrottle = NOT_THROTTLED;
+
+        SmashRequest<?> request = best.waiting.poll();
+        mCount--;
+        mActive++;
+        best.active++;
+        request.setHost(best);
+        request.setDispatchedAt(now);
+
+        SmashMetrics metrics = request.getMetrics();
+        if (metrics != null && metrics.queueWait < 0)
+        {
+            metrics.queueWait = request.getDispatchedAt() - metrics.queuedAt;
+        }
+
+        // Host goes to the back of the line, or leaves it if nothing else waits for it
+        mRoundRobin.remove(best);
+        if (!best.waiting.isEmpty())
+        {
+            mRoundRobin.addLast(best);
+        }
+
+        return request;
+    }
+
+    /**
+     * Takes slot of host for call which isn't request of this queue, e.g. hedge call, if it
+     * can be started now: circuit of host isn't open, host is below its limits, no request
+     * waits for it and rate limits have token for it. Slot is released with {@link SmashHost#release(long, boolean)}.
+     *
+     * @param name Name of host
+     * @return Host whose slot was taken, null if there's no slot available now
+     */
+    SmashHost tryAcquire(String name)
+    {
+        mLock.lock();
+        try
+        {
+            SmashAdaptiveLimit limit = mLimit;
+            if (limit != null && mActive >= limit.getLimit())
+            {
+                return null;
+            }
+
+            int maxPerHost = Integer.MAX_VALUE;
+            Dispatcher okHttpDispatcher = mOkHttpDispatcher;
+            if (okHttpDispatcher != null)
+            {
+                if (mActive >= okHttpDispatcher.getMaxRequests())
+                {
+                    return null;
+                }
+                maxPerHost = okHttpDispatcher.getMaxRequestsPerHost();
+            }
+
+            SmashCircuitBreaker breaker = mBreaker;
+            if (breaker != null && breaker.getState(name) == SmashCircuitBreaker.State.OPEN)
+            {
+                return null;
+            }
+
+            SmashHost host = mHosts.get(name);
+            int active = host != null ? host.active : 0;
+            if (active >= limitOf(name, maxPerHost) || (host != null && !host.waiting.isEmpty()))
+            {
+                return null;
+            }
+
+            long now = System.nanoTime();
+            SmashRateLimit rateLimit = mRateLimit;
+            if ((rateLimit != null && rateLimit.getDelay(now) > 0) || throttleOf(name, now) > 0)
+            {
+                return null;
+            }
+
+            if (rateLimit != null)
+            {
+                rateLimit.acquire(now);
+            }
+            SmashRateLimit hostRateLimit = mHostRateLimits.get(name);
+            if (hostRateLimit != null)
+            {
+                hostRateLimit.acquire(now);
+            }
+
+            if (host == null)
+            {
+                host = new SmashHost(this, name);
+                mHosts.put(name, host);
+            }
+            mActive++;
+            host.active++;
+            return host;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Releases slot of host taken with its request, updating adaptive limit and circuit
+     * breaker with outcome of request.
+     */
+    void release(SmashHost host, long latency, boolean failed)
+    {
+        // Before slot is released, so dispatchers woken up see new state of circuit
+        SmashCircuitBreaker breaker = mBreaker;
+        if (breaker != null && latency >= 0)
+        {
+            breaker.onResult(host.name, failed);
+        }
+
+        int inFlight;
+
+        mLock.lock();
+        try
+        {
+            inFlight = mActive;
+            mActive--;
+            host.active--;
+            if (host.active <= 0 && host.waiting.isEmpty())
+            {
+                mHosts.remove(host.name);
+            }
+            mAvailable.signalAll();
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+
+        SmashAdaptiveLimit limit = mLimit;
+        if (limit == null || latency < 0)
+        {
+            return;
+        }
+
+        int oldLimit = limit.getLimit();
+        limit.onSample(host.name, latency, failed, inFlight);
+        if (limit.getLimit() > oldLimit)
+        {
+            mLock.lock();
+            try
+            {
+                mAvailable.signalAll();
+            }
+            finally
+            {
+                mLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Promotes requests that waited on their priority longer than aging interval.
+     * Must be called with lock held.
+     */
+    private void promoteStarving()
+    {
+        long interval = mAgingInterval;
+        if (interval <= 0)
+        {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (now - mNextAging < 0)
+        {
+            return;
+        }
+        mNextAging = now + interval / 2;
+
+        for (SmashHost host : mRoundRobin)
+        {
+            List<SmashRequest<?>> starving = null;
+            for (SmashRequest<?> request : host.waiting)
+            {
+                if (request.getQueuedPriority().ordinal() < Priority.HIGH.ordinal()
+                        && now - request.getQueuedPrioritySince() >= interval)
+                {
+                    if (starving == null)
+                    {
+                        starving = new ArrayList<>();
+                    }
+                    starving.add(request);
+                }
+            }
+
+            if (starving != null)
+            {
+                // Re-insert to restore heap order
+                for (SmashRequest<?> request : starving)
+                {
+                    host.waiting.remove(request);
+                    request.promoteQueuedPriority(now);
+                    host.waiting.offer(request);
+                }
+            }
+        }
+    }
+
+    @Override
+    public SmashRequest<?> peek()
+    {
+        mLock.lock();
+        try
+        {
+            SmashRequest<?> best = null;
+            for (SmashHost host : mRoundRobin)
+            {
+                SmashRequest<?> request = host.waiting.peek();
+                if (best == null || request.getQueuedPriority().ordinal() > best.getQueuedPriority().ordinal())
+                {
+                    best = request;
+                }
+            }
+            return best;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object object)
+    {
+        if (!(object instanceof SmashRequest))
+        {
+            return false;
+        }
+
+        mLock.lock();
+        try
+        {
+            for (SmashHost host : mRoundRobin)
+            {
+                if (host.waiting.remove(object))
+                {
+                    mCount--;
+                    if (host.waiting.isEmpty())
+                    {
+                        mRoundRobin.remove(host);
+                        if (host.active <= 0)
+                        {
+                            mHosts.remove(host.name);
+                        }
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all requests waiting for provided host.
+     *
+     * @param name Name of host
+     * @return Removed requests, in no particular order
+     */
+    List<SmashRequest<?>> drain(String name)
+    {
+        mLock.lock();
+        try
+        {
+            SmashHost host = mHosts.get(name);
+            if (host == null || host.waiting.isEmpty())
+            {
+                return new ArrayList<>(0);
+            }
+
+            List<SmashRequest<?>> drained = new ArrayList<SmashRequest<?>>(host.waiting);
+            host.waiting.clear();
+            mCount -= drained.size();
+            mRoundRobin.remove(host);
+            if (host.active <= 0)
+            {
+                mHosts.remove(host.name);
+            }
+            return drained;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        mLock.lock();
+        try
+        {
+            for (SmashHost host : mRoundRobin)
+            {
+                host.waiting.clear();
+                if (host.active <= 0)
+                {
+                    mHosts.remove(host.name);
+                }
+            }
+            mRoundRobin.clear();
+            mCount = 0;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        mLock.lock();
+        try
+        {
+            return mCount;
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns iterator over snapshot of waiting requests, in no particular order.
+     */
+    @Override
+    public @NonNull Iterator<SmashRequest<?>> iterator()
+    {
+        mLock.lock();
+        try
+        {
+            List<SmashRequest<?>> snapshot = new ArrayList<>(mCount);
+            for (SmashHost host : mRoundRobin)
+            {
+                snapshot.addAll(host.waiting);
+            }
+
+            final Iterator<SmashRequest<?>> iterator = snapshot.iterator();
+            return new Iterator<SmashRequest<?>>()
+            {
+                private SmashRequest<?> mLast;
+
+                public boolean hasNext()
+                {
+                    return iterator.hasNext();
+                }
+
+                public SmashRequest<?> next()
+                {
+                    mLast = iterator.next();
+                    return mLast;
+                }
+
+                public void remove()
+                {
+                    SmashRequestQueue.this.remove(mLast);
+                }
+            };
+        }
+        finally
+        {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super SmashRequest<?>> collection)
+    {
+        return drainTo(collection, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(@NonNull Collection<? super SmashRequest<?>> collection, int maxElements)
+    {
+        int drained = 0;
+        SmashRequest<?> request;
+        while (drained < maxElements && (request = poll()) != null)
+        {
+            collection.add(request);
+            drained++;
+        }
+        return drained;
+    }
+
+}
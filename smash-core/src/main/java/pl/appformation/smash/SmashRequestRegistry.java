@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of current requests of queue, indexed by tag and by host. Adding and removing
+ * requests from many threads doesn't contend on single lock: requests are kept in
+ * concurrent map and indexes are split into stripes locked separately. Keys of indexes
+ * are dropped with their last request, so hosts seen once don't stay in memory. Iteration
+ * is weakly consistent, so canceling all requests doesn't block threads finishing them.
+ */
+class SmashRequestRegistry
+{
+
+    /** Number of stripes of indexes, power of two */
+    private static final int STRIPES = 16;
+
+    /** Hosts of current requests, by request */
+    private final ConcurrentHashMap<SmashRequest<?>, String> mRequests = new ConcurrentHashMap<>(64, 0.75f, STRIPES);
+
+    /** Current requests with tag, by tag */
+    private final Index mByTag = new Index();
+
+    /** Current requests, by host */
+    private final Index mByHost = new Index();
+
+    /**
+     * Adds request to registry.
+     *
+     * @param request Request added to queue
+     * @param host Host of request, see {@link SmashRequestQueue#hostOf(SmashRequest)}
+     */
+    void add(SmashRequest<?> request, String host)
+    {
+        if (mRequests.putIfAbsent(request, host) != null)
+        {
+            return;
+        }
+
+        mByHost.add(host, request);
+
+        Object tag = request.getTag();
+        if (tag != null)
+        {
+            mByTag.add(tag, request);
+        }
+    }
+
+    /**
+     * Removes request from registry.
+     *
+     * @param request Finished request
+     * @return True if request was registered
+     */
+    boolean remove(SmashRequest<?> request)
+    {
+        String host = mRequests.remove(request);
+        if (host == null)
+        {
+            return false;
+        }
+
+        mByHost.remove(host, request);
+
+        Object tag = request.getTag();
+        if (tag != null)
+        {
+            mByTag.remove(tag, request);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns weakly consistent view of current requests, which can be iterated while
+     * requests are added and removed.
+     */
+    Collection<SmashRequest<?>> getAll()
+    {
+        return mRequests.keySet();
+    }
+
+    /**
+     * Returns snapshot of current requests with provided tag.
+     */
+    List<SmashRequest<?>> getByTag(Object tag)
+    {
+        return mByTag.get(tag);
+    }
+
+    /**
+     * Returns snapshot of current requests to provided host.
+     */
+    List<SmashRequest<?>> getByHost(String host)
+    {
+        return mByHost.get(host);
+    }
+
+    /**
+     * Returns number of current requests.
+     */
+    int size()
+    {
+        return mRequests.size();
+    }
+
+    /**
+     * Returns number of current requests to provided host.
+     */
+    int sizeByHost(String host)
+    {
+        return mByHost.size(host);
+    }
+
+    /**
+     * Sets of requests by key, split into stripes each guarded by its own map.
+     */
+    private static final class Index
+    {
+
+        /** Stripes of index, each guarded by itself */
+        private final List<Map<Object, Set<SmashRequest<?>>>> mStripes = new ArrayList<>(STRIPES);
+
+        Index()
+        {
+            for (int i = 0; i < STRIPES; i++)
+            {
+                mStripes.add(new HashMap<Object, Set<SmashRequest<?>>>());
+            }
+        }
+
+        private Map<Object, Set<SmashRequest<?>>> stripe(Object key)
+        {
+            int hash = key.hashCode();
+            return mStripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+        }
+
+        void add(Object key, SmashRequest<?> request)
+        {
+            Map<Object, Set<SmashRequest<?>>> stripe = stripe(key);
+            synchronized (stripe)
+            {
+                Set<SmashRequest<?>> requests = stripe.get(key);
+                if (requests == null)
+                {
+                    requests = new HashSet<>();
+                    stripe.put(key, requests);
+                }
+                requests.add(request);
+            }
+        }
+
+        void remove(Object key, SmashRequest<?> request)
+        {
+            Map<Object, Set<SmashRequest<?>>> stripe = stripe(key);
+            synchronized (stripe)
+            {
+                Set<SmashRequest<?>> requests = stripe.get(key);
+                if (requests != null && requests.remove(request) && requests.isEmpty())
+                {
+                    stripe.remove(key);
+                }
+            }
+        }
+
+        List<SmashRequest<?>> get(Object key)
+        {
+            Map<Object, Set<SmashRequest<?>>> stripe = stripe(key);
+            synchronized (stripe)
+            {
+                Set<SmashRequest<?>> requests = stripe.get(key);
+                if (requests == null)
+                {
+                    return Collections.emptyList();
+                }
+
+                return new ArrayList<>(requests);
+            }
+        }
+
+        int size(Object key)
+        {
+            Map<Object, Set<SmashRequest<?>>> stripe = stripe(key);
+            synchronized (stripe)
+            {
+                Set<SmashRequest<?>> requests = stripe.get(key);
+                return requests != null ? requests.size() : 0;
+            }
+        }
+
+    }
+
+}
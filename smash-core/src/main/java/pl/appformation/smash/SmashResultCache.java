@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory cache of parsed responses, so identical payload received again is delivered
+ * without parsing. Entries are keyed by cache key of request and ETag or hash of body,
+ * weighted by size of body and evicted least recently used first.
+ *
+ * Only request types returning true from {@link SmashRequest#isShouldCacheResult()}
+ * are cached, and their results are shared between deliveries, so they must not be modified.
+ */
+public class SmashResultCache
+{
+
+    /** Maximum weight of all entries, in bytes of response bodies */
+    private final long mMaxSize;
+
+    /** Entries by key, in access order */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total weight of entries */
+    private long mSize = 0;
+
+    /** Number of responses delivered without parsing */
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    /** Number of responses which had to be parsed */
+    private final AtomicLong mMissCount = new AtomicLong();
+
+    /**
+     * Creates cache holding parsed results of bodies up to provided total size.
+     *
+     * @param maxSize Maximum size of response bodies in bytes
+     */
+    public SmashResultCache(long maxSize)
+    {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Removes all entries from cache.
+     */
+    public synchronized void clear()
+    {
+        mEntries.clear();
+        mSize = 0;
+    }
+
+    /**
+     * Returns parsed response for provided key, or null if it's not cached.
+     *
+     * @param key Key of response
+     * @return Parsed response
+     */
+    @Nullable SmashResponse<?> get(@NonNull String key)
+    {
+        Entry entry;
+        synchronized (this)
+        {
+            entry = mEntries.get(key);
+        }
+
+        if (entry == null)
+        {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        mHitCount.incrementAndGet();
+        return entry.response;
+    }
+
+    /**
+     * Stores parsed response, evicting least recently used entries when cache is full.
+     *
+     * @param key Key of response
+     * @param response Parsed response
+     * @param size Size of response body in bytes
+     */
+    synchronized void put(@NonNull String key, @NonNull SmashResponse<?> response, long size)
+    {
+        if (size > mMaxSize)
+        {
+            return;
+        }
+
+        Entry previous = mEntries.put(key, new Entry(response, size));
+        if (previous != null)
+        {
+            mSize -= previous.size;
+        }
+        mSize += size;
+
+        Iterator<Entry> iterator = mEntries.values().iterator();
+        while (mSize > mMaxSize && iterator.hasNext())
+        {
+            mSize -= iterator.next().size;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns number of responses delivered without parsing.
+     */
+    public long getHitCount()
+    {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns number of cacheable responses which had to be parsed.
+     */
+    public long getMissCount()
+    {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns total size of cached response bodies in bytes.
+     */
+    public synchronized long getSize()
+    {
+        return mSize;
+    }
+
+    private static final class Entry
+    {
+
+        final SmashResponse<?> response;
+
+        final long size;
+
+        Entry(SmashResponse<?> response, long size)
+        {
+            this.response = response;
+            this.size = size;
+        }
+
+    }
+
+}
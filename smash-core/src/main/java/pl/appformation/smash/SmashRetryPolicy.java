@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import okhttp3.Headers;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Policy of retrying failed requests, attached with {@link SmashRequest#setRetryPolicy(SmashRetryPolicy)}.
+ *
+ * Failed request is added back to its queue after exponential backoff with random jitter,
+ * delay is scheduled by the queue so backing off request doesn't hold dispatcher thread.
+ * By default I/O failures and 408, 429, 500, 502, 503 and 504 responses of idempotent
+ * requests are retried.
+ *
+ * Request body is written again for each attempt, so it has to be repeatable. Request whose
+ * body streams from source which can be sent only once (see {@link SmashStreamingBody}) isn't
+ * retried, its error is delivered instead.
+ */
+public class SmashRetryPolicy
+{
+
+    /** Default status codes worth retrying */
+    private static final int[] DEFAULT_RETRYABLE_CODES = {408, 429, 500, 502, 503, 504};
+
+    /** Retry-After header name */
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    /** Source of jitter */
+    private static final Random sRandom = new Random();
+
+    /** Maximum number of attempts, including the first one */
+    private final int mMaxAttempts;
+
+    /** Delay before first retry in milliseconds */
+    private long mInitialBackoff = 1000;
+
+    /** Factor by which delay grows with each retry */
+    private float mBackoffMultiplier = 2f;
+
+    /** Maximum delay in milliseconds */
+    private long mMaxBackoff = 30000;
+
+    /** Fraction of delay which is randomized */
+    private float mJitter = 0.5f;
+
+    /** Status codes of responses worth retrying */
+    private final Set<Integer> mRetryableCodes = new HashSet<>();
+
+    /** Types of failures worth retrying */
+    private final List<Class<? extends Throwable>> mRetryableExceptions = new ArrayList<>();
+
+    /** Whether POST and PATCH requests are retried as well */
+    private boolean mRetryNonIdempotent = false;
+
+    /**
+     * Creates policy with default backoff of 1 second, doubled with each retry up to 30 seconds,
+     * randomized by half of its value.
+     *
+     * @param maxAttempts Maximum number of attempts, including the first one
+     */
+    public SmashRetryPolicy(int maxAttempts)
+    {
+        mMaxAttempts = maxAttempts;
+
+        for (int code : DEFAULT_RETRYABLE_CODES)
+        {
+            mRetryableCodes.add(code);
+        }
+        mRetryableExceptions.add(IOException.class);
+    }
+
+    /**
+     * Adds type of failure worth retrying, in addition to {@link IOException}.
+     *
+     * @param type Type of exception causing failure
+     */
+    public void addRetryableException(@NonNull Class<? extends Throwable> type)
+    {
+        mRetryableExceptions.add(type);
+    }
+
+    /**
+     * Returns delay in milliseconds before next attempt. Delay requested by server with
+     * Retry-After header is honored, when it's longer than the backoff.
+     *
+     * @param attempt Number of attempts made so far
+     * @param error Error of last attempt
+     * @return Delay in milliseconds
+     */
+    public long getDelay(int attempt, @NonNull SmashError error)
+    {
+        double backoff = mInitialBackoff * Math.pow(mBackoffMultiplier, attempt - 1);
+        backoff = Math.min(backoff, mMaxBackoff);
+        backoff -= backoff * mJitter * sRandom.nextDouble();
+
+        return Math.max((long) backoff, getRetryAfter(error));
+    }
+
+    /**
+     * Returns delay requested by Retry-After header in seconds format, or 0.
+     */
+    private static long getRetryAfter(SmashError error)
+    {
+        SmashNetworkData data = error.getData();
+        return data != null ? getRetryAfter(data.headers) : 0;
+    }
+
+    /**
+     * Returns delay in milliseconds requested by Retry-After header in seconds format, or 0.
+     */
+    static long getRetryAfter(Headers headers)
+    {
+        String retryAfter = headers != null ? headers.get(HEADER_RETRY_AFTER) : null;
+        if (retryAfter == null)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        }
+        catch (NumberFormatException ignored)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns maximum number of attempts, including the first one.
+     */
+    public int getMaxAttempts()
+    {
+        return mMaxAttempts;
+    }
+
+    /**
+     * Returns true if request can be safely repeated. By default POST and PATCH requests
+     * aren't, unless {@link #setRetryNonIdempotent(boolean)} is enabled.
+     *
+     * @param request Failed request
+     */
+    protected boolean isIdempotent(@NonNull SmashRequest<?> request)
+    {
+        return mRetryNonIdempotent
+                || (request.getMethod() != SmashRequest.Method.POST && request.getMethod() != SmashRequest.Method.PATCH);
+    }
+
+    /**
+     * Returns true if failure described by error is worth retrying.
+     *
+     * @param error Error of last attempt
+     */
+    protected boolean isRetryable(@NonNull SmashError error)
+    {
+        SmashNetworkData data = error.getData();
+        if (data != null && data.code > 0)
+        {
+            return mRetryableCodes.contains(data.code);
+        }
+
+        Throwable cause = error.getCause();
+        if (cause == null)
+        {
+            return false;
+        }
+
+        for (Class<? extends Throwable> type : mRetryableExceptions)
+        {
+            if (type.isInstance(cause))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Sets exponential backoff between attempts.
+     *
+     * @param initialBackoff Delay before first retry
+     * @param multiplier Factor by which delay grows with each retry
+     * @param maxBackoff Maximum delay
+     * @param unit Unit of delays
+     */
+    public void setBackoff(long initialBackoff, float multiplier, long maxBackoff, TimeUnit unit)
+    {
+        mInitialBackoff = unit.toMillis(initialBackoff);
+        mBackoffMultiplier = multiplier;
+        mMaxBackoff = unit.toMillis(maxBackoff);
+    }
+
+    /**
+     * Sets fraction of delay which is randomized, so clients failed at the same time
+     * don't retry at the same time. Default is 0.5.
+     *
+     * @param jitter Fraction between 0 (no jitter) and 1 (delay anywhere up to backoff)
+     */
+    public void setJitter(float jitter)
+    {
+        mJitter = jitter;
+    }
+
+    /**
+     * Sets status codes of responses worth retrying, replacing default ones.
+     *
+     * @param codes HTTP status codes
+     */
+    public void setRetryableStatusCodes(int... codes)
+    {
+        mRetryableCodes.clear();
+        for (int code : codes)
+        {
+            mRetryableCodes.add(code);
+        }
+    }
+
+    /**
+     * Sets whether POST and PATCH requests should be retried as well.
+     *
+     * @param retryNonIdempotent True to retry non idempotent requests
+     */
+    public void setRetryNonIdempotent(boolean retryNonIdempotent)
+    {
+        mRetryNonIdempotent = retryNonIdempotent;
+    }
+
+    /**
+     * Returns true if failed request should be attempted again.
+     *
+     * @param request Failed request
+     * @param attempt Number of attempts made so far
+     * @param error Error of last attempt
+     * @return True to retry request
+     */
+    public boolean shouldRetry(@NonNull SmashRequest<?> request, int attempt, @NonNull SmashError error)
+    {
+        return attempt < mMaxAttempts && !request.isCanceled() && isIdempotent(request) && isRetryable(error);
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Request body streaming its content straight to the OkHttp sink, without
+ * copying whole content onto the heap first. Content length is reported when
+ * known, otherwise body is sent with chunked transfer encoding.
+ *
+ * Bodies backed by {@link Buffer}, file or producer can be written multiple times
+ * (e.g. when OkHttp retries or follows redirect), bodies backed by other sources
+ * can be written only once. Their source is closed once written or when request
+ * finishes, whichever comes first.
+ */
+public abstract class SmashStreamingBody extends RequestBody implements Closeable
+{
+
+    /**
+     * Producer writing body content directly to the sink.
+     */
+    public interface Producer
+    {
+        /**
+         * Writes body content, might be invoked more than once.
+         *
+         * @param sink Sink of request body
+         */
+        void writeTo(BufferedSink sink) throws IOException;
+    }
+
+    /** Content type of body */
+    private final MediaType mContentType;
+
+    /** Length of content in bytes, or -1 if unknown */
+    private final long mContentLength;
+
+    private SmashStreamingBody(MediaType contentType, long contentLength)
+    {
+        mContentType = contentType;
+        mContentLength = contentLength;
+    }
+
+    /**
+     * Creates body streaming from source. Content length is known only for {@link Buffer}.
+     *
+     * @param contentType Content type of body
+     * @param source Source of body, closed when written or when request finishes
+     * @return Body instance
+     */
+    public static SmashStreamingBody create(@Nullable MediaType contentType, @NonNull BufferedSource source)
+    {
+        long contentLength = source instanceof Buffer ? ((Buffer) source).size() : -1;
+        return create(contentType, source, contentLength);
+    }
+
+    /**
+     * Creates body streaming from source with known length.
+     *
+     * Source other than {@link Buffer} can be sent only once, so OkHttp doesn't
+     * silently retry such request and 307/308 redirect which resends the body fails.
+     *
+     * @param contentType Content type of body
+     * @param source Source of body, closed when written or when request finishes
+     * @param contentLength Length of content in bytes, or -1 if unknown
+     * @return Body instance
+     */
+    public static SmashStreamingBody create(@Nullable MediaType contentType, @NonNull final BufferedSource source,
+                                            long contentLength)
+    {
+        if (source instanceof Buffer)
+        {
+            final Buffer buffer = (Buffer) source;
+            return new SmashStreamingBody(contentType, contentLength)
+            {
+                public void writeTo(BufferedSink sink) throws IOException
+                {
+                    // Clone shares segments with original, so it's cheap and body stays repeatable
+                    sink.writeAll(buffer.clone());
+                }
+            };
+        }
+
+        return new SmashStreamingBody(contentType, contentLength)
+        {
+            /** Whether source was already written */
+            private boolean mConsumed = false;
+
+            public void writeTo(BufferedSink sink) throws IOException
+            {
+                if (mConsumed)
+                {
+                    throw new IOException("Body source was already consumed");
+                }
+                mConsumed = true;
+
+                try
+                {
+                    sink.writeAll(source);
+                }
+                finally
+                {
+                    source.close();
+                }
+            }
+
+            @Override
+            boolean isOneShot()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+                mConsumed = true;
+                try
+                {
+                    source.close();
+                }
+                catch (IOException ignored)
+                {
+                    // Nothing to do, body won't be sent anyway
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates body streaming from file.
+     *
+     * @param contentType Content type of body
+     * @param file File to send
+     * @return Body instance
+     */
+    public static SmashStreamingBody create(@Nullable MediaType contentType, @NonNull final File file)
+    {
+        return new SmashStreamingBody(contentType, file.length())
+        {
+            public void writeTo(BufferedSink sink) throws IOException
+            {
+                Source source = Okio.source(file);
+                try
+                {
+                    sink.writeAll(source);
+                }
+                finally
+                {
+                    source.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates body written by producer.
+     *
+     * @param contentType Content type of body
+     * @param producer Producer of content
+     * @param contentLength Length of content in bytes, or -1 if unknown
+     * @return Body instance
+     */
+    public static SmashStreamingBody create(@Nullable MediaType contentType, @NonNull final Producer producer,
+                                            long contentLength)
+    {
+        return new SmashStreamingBody(contentType, contentLength)
+        {
+            public void writeTo(BufferedSink sink) throws IOException
+            {
+                producer.writeTo(sink);
+            }
+        };
+    }
+
+    /**
+     * Returns true if body can be written only once.
+     */
+    boolean isOneShot()
+    {
+        return false;
+    }
+
+    /**
+     * Releases resources held by body which might not be written, called when request finishes.
+     */
+    @Override
+    public void close()
+    {
+        // Repeatable bodies open their resources only while written
+    }
+
+    /**
+     * Creates body written by other body composed of streaming parts, e.g. MultipartBody.
+     * Body can be written only once if any of its parts can, closing it closes all parts.
+     *
+     * @param body Body writing the parts
+     * @param parts Streaming parts of body
+     * @return Body instance
+     */
+    public static SmashStreamingBody create(@NonNull final RequestBody body,
+                                            @NonNull Collection<SmashStreamingBody> parts)
+    {
+        long contentLength;
+        try
+        {
+            contentLength = body.contentLength();
+        }
+        catch (IOException ioe)
+        {
+            contentLength = -1;
+        }
+
+        final List<SmashStreamingBody> streamingParts = new ArrayList<>(parts);
+        return new SmashStreamingBody(body.contentType(), contentLength)
+        {
+            public void writeTo(BufferedSink sink) throws IOException
+            {
+                body.writeTo(sink);
+            }
+
+            @Override
+            boolean isOneShot()
+            {
+                for (SmashStreamingBody part : streamingParts)
+                {
+                    if (part.isOneShot())
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            @Override
+            public void close()
+            {
+                for (SmashStreamingBody part : streamingParts)
+                {
+                    part.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public MediaType contentType()
+    {
+        return mContentType;
+    }
+
+    @Override
+    public long contentLength()
+    {
+        return mContentLength;
+    }
+
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+/**
+ * Adjusts priority of Smash worker threads, see {@link Smash#setThreadPriority(SmashThreadPriority)}.
+ */
+public interface SmashThreadPriority
+{
+
+    /**
+     * Lowers priority of calling thread to background level. Invoked by every
+     * dispatcher and parser thread when it starts.
+     */
+    void applyBackgroundPriority();
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.errors;
+
+/**
+ * Error of request to host whose circuit is open, see {@link pl.appformation.smash.SmashCircuitBreaker}.
+ * Request failed without reaching network.
+ */
+public class SmashCircuitOpenError extends SmashError
+{
+
+    private final String host;
+
+    public SmashCircuitOpenError(String host)
+    {
+        super("Circuit of " + host + " is open");
+        this.host = host;
+    }
+
+    public String getHost()
+    {
+        return host;
+    }
+
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.errors;
+
+import pl.appformation.smash.SmashNetworkData;
+
+/**
+ * Error of request which didn't complete in time, because its deadline passed
+ * or socket operation timed out.
+ */
+public class SmashTimeoutError extends SmashError
+{
+
+    public SmashTimeoutError(String message)
+    {
+        super(message);
+    }
+
+    public SmashTimeoutError(SmashNetworkData data, Throwable throwable)
+    {
+        super(data, throwable);
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.requests;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import okhttp3.Headers;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.HashingSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+import pl.appformation.smash.SmashNetworkData;
+import pl.appformation.smash.SmashRequest;
+import pl.appformation.smash.SmashResponse;
+import pl.appformation.smash.SmashResponse.FailedListener;
+import pl.appformation.smash.SmashResponse.SuccessListener;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Request downloading response straight into file, segments of response are moved from
+ * network to file without copying whole body on heap. Body is written to partial file next
+ * to target (with .part suffix), which is renamed to target once download completes. When
+ * download fails, next request for the same file resumes it with Range request, validated
+ * with If-Range by ETag or Last-Modified of response which started it.
+ */
+public class SmashFileRequest extends SmashRequest<File>
+{
+
+    /** Number of bytes read from network at once */
+    private static final long SEGMENT_SIZE = 8192;
+
+    /** Range header name */
+    private static final String HEADER_RANGE = "Range";
+
+    /** If-Range header name */
+    private static final String HEADER_IF_RANGE = "If-Range";
+
+    /** Content-Range header name */
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+    /** Status code of partial content */
+    private static final int HTTP_PARTIAL_CONTENT = 206;
+
+    /** Status code of range which can't be satisfied */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /**
+     * Listener of download progress.
+     */
+    public interface ProgressListener
+    {
+
+        /**
+         * Called on thread parsing response, after each segment written to file.
+         *
+         * @param downloaded Number of bytes in file, including those of resumed download
+         * @param total Size of whole file, -1 if unknown
+         */
+        void onProgress(long downloaded, long total);
+
+    }
+
+    /** File response is saved to */
+    private final File mFile;
+
+    /** File holding partially downloaded response */
+    private final File mPartFile;
+
+    /** File holding ETag or Last-Modified of partially downloaded response */
+    private final File mValidatorFile;
+
+    /** Listener of download progress, null if progress isn't reported */
+    private ProgressListener mProgressListener;
+
+    /** Name of checksum algorithm, null if file isn't verified */
+    private String mChecksumAlgorithm;
+
+    /** Expected checksum of whole file */
+    private ByteString mChecksum;
+
+    public SmashFileRequest(String url, @NonNull File file, SuccessListener<File> successListener, FailedListener failedListener)
+    {
+        super(Method.GET, url, successListener, failedListener);
+        this.mFile = file;
+        this.mPartFile = new File(file.getPath() + ".part");
+        this.mValidatorFile = new File(file.getPath() + ".part.validator");
+    }
+
+    /**
+     * Sets listener of download progress.
+     *
+     * @param progressListener Progress listener, null to stop reporting progress
+     */
+    public void setProgressListener(@Nullable ProgressListener progressListener)
+    {
+        this.mProgressListener = progressListener;
+    }
+
+    /**
+     * Sets checksum of whole file, computed while it's downloaded. Download fails and
+     * partial file is removed when checksum doesn't match.
+     *
+     * @param algorithm One of "MD5", "SHA-1", "SHA-256" or "SHA-512"
+     * @param checksum Expected checksum, e.g. ByteString.decodeHex("9f86d0...")
+     */
+    public void setChecksum(@NonNull String algorithm, @NonNull ByteString checksum)
+    {
+        hashing(algorithm, Okio.blackhole());
+
+        this.mChecksumAlgorithm = algorithm;
+        this.mChecksum = checksum;
+    }
+
+    /**
+     * Adds Range headers resuming partial download. Called when call is built on dispatcher
+     * thread, as it reads validator from disk.
+     */
+    @Override
+    public @Nullable Headers getHeaders()
+    {
+        Headers headers = super.getHeaders();
+
+        String validator = readValidator();
+        long offset = mPartFile.length();
+        if (validator == null || offset == 0)
+        {
+            return headers;
+        }
+
+        Headers.Builder builder = headers != null ? headers.newBuilder() : new Headers.Builder();
+        return builder.set(HEADER_RANGE, "bytes=" + offset + "-")
+                .set(HEADER_IF_RANGE, validator)
+                .build();
+    }
+
+    @Override
+    protected @Nullable String getCoalescingKey()
+    {
+        // Range headers follow from the file, so they're left out rather than read from disk
+        // on thread adding request
+        Headers headers = super.getHeaders();
+        return getClass().getName() + ' ' + getMethod() + ' ' + getUrl() + '\n' + (headers != null ? headers : "")
+                + '\n' + mFile.getPath();
+    }
+
+    @Override
+    public boolean isShouldCache()
+    {
+        return false;
+    }
+
+    @Override
+    protected SmashError parseNetworkError(SmashError error)
+    {
+        if (error.getData() != null && error.getData().code == HTTP_RANGE_NOT_SATISFIABLE)
+        {
+            // Partial file doesn't match resource anymore, start over on retry
+            deletePartial();
+        }
+
+        return error;
+    }
+
+    protected SmashResponse<File> parseResponse(SmashNetworkData data)
+    {
+        Sink sink = null;
+
+        try
+        {
+            long offset = 0;
+            if (data.code == HTTP_PARTIAL_CONTENT)
+            {
+                offset = mPartFile.length();
+
+                String contentRange = data.headers.get(HEADER_CONTENT_RANGE);
+                if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-"))
+                {
+                    deletePartial();
+                    return SmashResponse.failed(new SmashError("Unexpected range " + contentRange, data));
+                }
+            }
+            else
+            {
+                writeValidator(data.headers);
+            }
+
+            sink = offset > 0 ? Okio.appendingSink(mPartFile) : Okio.sink(mPartFile);
+
+            HashingSink hashing = null;
+            if (mChecksum != null)
+            {
+                hashing = hashing(mChecksumAlgorithm, new SkippingSink(sink, offset));
+                sink = hashing;
+
+                // Bytes of resumed download are hashed only, SkippingSink drops them
+                Source part = Okio.source(mPartFile);
+                try
+                {
+                    Okio.buffer(part).readAll(hashing);
+                }
+                finally
+                {
+                    part.close();
+                }
+            }
+
+            long total = data.length >= 0 ? offset + data.length : -1;
+            long downloaded = offset;
+            Buffer buffer = new Buffer();
+            long read;
+
+            while ((read = data.source.read(buffer, SEGMENT_SIZE)) != -1)
+            {
+                sink.write(buffer, read);
+                downloaded += read;
+
+                if (mProgressListener != null)
+                {
+                    mProgressListener.onProgress(downloaded, total);
+                }
+            }
+
+            sink.close();
+            sink = null;
+
+            ByteString checksum = hashing != null ? hashing.hash() : null;
+            if (checksum != null && !checksum.equals(mChecksum))
+            {
+                deletePartial();
+                return SmashResponse.failed(new SmashError("Checksum mismatch, expected " + mChecksum.hex()
+                        + " but was " + checksum.hex(), data));
+            }
+
+            if ((mFile.exists() && !mFile.delete()) || !mPartFile.renameTo(mFile))
+            {
+                return SmashResponse.failed(new SmashError("Unable to move downloaded file to " + mFile, data));
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mValidatorFile.delete();
+
+            return SmashResponse.success(mFile);
+        }
+        catch (IOException ioe)
+        {
+            // Partial file is kept, next request resumes it
+            return SmashResponse.failed(new SmashError(ioe));
+        }
+        finally
+        {
+            if (sink != null)
+            {
+                try
+                {
+                    sink.close();
+                }
+                catch (IOException ignored)
+                {
+                }
+            }
+        }
+    }
+
+    private void deletePartial()
+    {
+        //noinspection ResultOfMethodCallIgnored
+        mPartFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mValidatorFile.delete();
+    }
+
+    /**
+     * Returns ETag or Last-Modified of partially downloaded response, null if there's none.
+     */
+    private @Nullable String readValidator()
+    {
+        if (!mValidatorFile.exists())
+        {
+            return null;
+        }
+
+        try
+        {
+            BufferedSource source = Okio.buffer(Okio.source(mValidatorFile));
+            try
+            {
+                return source.readUtf8();
+            }
+            finally
+            {
+                source.close();
+            }
+        }
+        catch (IOException ioe)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Saves strong ETag or Last-Modified of response, so its download can be resumed.
+     */
+    private void writeValidator(Headers headers) throws IOException
+    {
+        String validator = headers.get("ETag");
+        if (validator == null || validator.startsWith("W/"))
+        {
+            validator = headers.get("Last-Modified");
+        }
+
+        if (validator == null)
+        {
+            //noinspection ResultOfMethodCallIgnored
+            mValidatorFile.delete();
+            return;
+        }
+
+        Sink sink = Okio.sink(mValidatorFile);
+        try
+        {
+            Okio.buffer(sink).writeUtf8(validator).flush();
+        }
+        finally
+        {
+            sink.close();
+        }
+    }
+
+    private static HashingSink hashing(String algorithm, Sink sink)
+    {
+        switch (algorithm)
+        {
+            case "MD5":
+                return HashingSink.md5(sink);
+            case "SHA-1":
+                return HashingSink.sha1(sink);
+            case "SHA-256":
+                return HashingSink.sha256(sink);
+            case "SHA-512":
+                return HashingSink.sha512(sink);
+            default:
+                throw new IllegalArgumentException("Unsupported checksum algorithm " + algorithm);
+        }
+    }
+
+    /**
+     * Sink dropping given number of leading bytes, passing the rest to delegate.
+     */
+    private static class SkippingSink extends ForwardingSink
+    {
+
+        /** Number of bytes still to drop */
+        private long mSkip;
+
+        SkippingSink(Sink delegate, long skip)
+        {
+            super(delegate);
+            this.mSkip = skip;
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException
+        {
+            long skipped = Math.min(mSkip, byteCount);
+            source.skip(skipped);
+            mSkip -= skipped;
+
+            if (byteCount > skipped)
+            {
+                super.write(source, byteCount - skipped);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.requests;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import java.io.IOException;
+import okio.Okio;
+import pl.appformation.smash.SmashNetworkData;
+import pl.appformation.smash.SmashRequest;
+import pl.appformation.smash.SmashResponse;
+import pl.appformation.smash.SmashResponse.FailedListener;
+import pl.appformation.smash.SmashResponse.SuccessListener;
+import pl.appformation.smash.errors.SmashError;
+
+/**
+ * Request parsing JSON response while it's streamed from network, without
+ * materializing it as String or JSON tree. Subclasses pull tokens from
+ * {@link JsonReader} and bind them directly to their own model objects.
+ *
+ * @param <T> Type of parsed response this request provide
+ */
+public abstract class SmashJsonReaderRequest<T> extends SmashRequest<T>
+{
+
+    public SmashJsonReaderRequest(@MethodRes int method, SuccessListener<T> successListener, FailedListener failedListener)
+    {
+        super(method, successListener, failedListener);
+    }
+
+    public SmashJsonReaderRequest(@MethodRes int method, String url, SuccessListener<T> successListener, FailedListener failedListener)
+    {
+        super(method, url, successListener, failedListener);
+    }
+
+    protected SmashResponse<T> parseResponse(SmashNetworkData data)
+    {
+        try
+        {
+            JsonReader reader = JsonReader.of(Okio.buffer(data.source));
+            return SmashResponse.success(parse(reader));
+        }
+        catch (JsonDataException | IOException e)
+        {
+            return SmashResponse.failed(new SmashError(e));
+        }
+    }
+
+    /**
+     * Subclasses must implement this to read response from JSON reader.
+     * This method will be called from a worker thread.
+     *
+     * @param reader Reader of response JSON
+     * @return Parsed response
+     * @throws IOException when response can't be read or is malformed
+     */
+    protected abstract T parse(JsonReader reader) throws IOException;
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.requests;
+
+import android.support.annotation.NonNull;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import java.io.IOException;
+import pl.appformation.smash.SmashResponse.FailedListener;
+import pl.appformation.smash.SmashResponse.SuccessListener;
+
+/**
+ * Request binding streamed JSON response to model objects with Moshi {@link JsonAdapter}.
+ *
+ * @param <T> Type of parsed response this request provide
+ */
+public class SmashMoshiRequest<T> extends SmashJsonReaderRequest<T>
+{
+
+    /** Adapter reading response */
+    private final JsonAdapter<T> mAdapter;
+
+    public SmashMoshiRequest(@MethodRes int method, @NonNull JsonAdapter<T> adapter, SuccessListener<T> successListener,
+                             FailedListener failedListener)
+    {
+        super(method, successListener, failedListener);
+        this.mAdapter = adapter;
+    }
+
+    public SmashMoshiRequest(@MethodRes int method, String url, @NonNull JsonAdapter<T> adapter,
+                             SuccessListener<T> successListener, FailedListener failedListener)
+    {
+        super(method, url, successListener, failedListener);
+        this.mAdapter = adapter;
+    }
+
+    protected T parse(JsonReader reader) throws IOException
+    {
+        return mAdapter.fromJson(reader);
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash.requests;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.ForwardingSink;
+import okio.Okio;
+import pl.appformation.smash.SmashResponse.FailedListener;
+import pl.appformation.smash.SmashResponse.SuccessListener;
+import pl.appformation.smash.SmashStreamingBody;
+
+/**
+ * Request sending multipart/form-data body built from fields, files and sources. Parts are
+ * streamed to the socket one after another, files are read segment by segment and never
+ * held on heap whole. Content length of body is sent when length of every part is known,
+ * otherwise body is sent with chunked transfer encoding.
+ *
+ * Response is parsed as string.
+ */
+public class SmashMultipartRequest extends SmashStringRequest
+{
+
+    /** Multipart form data media type */
+    private static final MediaType MULTIPART_FORM_DATA = MediaType.parse("multipart/form-data");
+
+    /**
+     * Listener of upload progress.
+     */
+    public interface ProgressListener
+    {
+
+        /**
+         * Called on thread writing request body, after each segment written to network.
+         *
+         * @param uploaded Number of bytes of body written so far
+         * @param total Length of whole body, -1 if unknown
+         */
+        void onProgress(long uploaded, long total);
+
+    }
+
+    /** Boundary separating parts, the same in content type and every body built */
+    private final String mBoundary = UUID.randomUUID().toString();
+
+    /** Parts of body, in order they are sent */
+    private final List<MultipartBody.Part> mParts = new ArrayList<>();
+
+    /** Listener of upload progress, null if progress isn't reported */
+    private ProgressListener mProgressListener;
+
+    public SmashMultipartRequest(String url, SuccessListener<String> successListener, FailedListener failedListener)
+    {
+        this(Method.POST, url, successListener, failedListener);
+    }
+
+    public SmashMultipartRequest(@MethodRes int method, String url, SuccessListener<String> successListener, FailedListener failedListener)
+    {
+        super(method, url, successListener, failedListener);
+    }
+
+    /**
+     * Adds text field.
+     *
+     * @param name Name of field
+     * @param value Value of field
+     */
+    public void addField(@NonNull String name, @NonNull String value)
+    {
+        mParts.add(MultipartBody.Part.createFormData(name, value));
+    }
+
+    /**
+     * Adds file, streamed from disk when body is written. File part can be sent again
+     * when OkHttp retries request or follows redirect.
+     *
+     * @param name Name of field
+     * @param file File to send, its name is sent as file name
+     * @param contentType Content type of file, null if unknown
+     */
+    public void addFile(@NonNull String name, @NonNull File file, @Nullable MediaType contentType)
+    {
+        mParts.add(MultipartBody.Part.createFormData(name, file.getName(), SmashStreamingBody.create(contentType, file)));
+    }
+
+    /**
+     * Adds content of source, streamed when body is written. Source can be sent only once,
+     * unless it's {@link Buffer}, so request isn't retried then.
+     *
+     * @param name Name of field
+     * @param fileName File name sent with content, null if there's none
+     * @param contentType Content type of source, null if unknown
+     * @param source Source of content, closed when written
+     * @param contentLength Length of content in bytes, or -1 if unknown
+     */
+    public void addSource(@NonNull String name, @Nullable String fileName, @Nullable MediaType contentType,
+                          @NonNull BufferedSource source, long contentLength)
+    {
+        mParts.add(MultipartBody.Part.createFormData(name, fileName,
+                SmashStreamingBody.create(contentType, source, contentLength)));
+    }
+
+    /**
+     * Adds part with its own headers, e.g. Content-Disposition and Content-Transfer-Encoding.
+     * Content-Type and Content-Length of part are taken from body.
+     *
+     * @param headers Headers of part, null if there are none
+     * @param body Body of part, e.g. {@link SmashStreamingBody}
+     */
+    public void addPart(@Nullable Headers headers, @NonNull RequestBody body)
+    {
+        mParts.add(MultipartBody.Part.create(headers, body));
+    }
+
+    /**
+     * Sets listener of upload progress.
+     *
+     * @param progressListener Progress listener, null to stop reporting progress
+     */
+    public void setProgressListener(@Nullable ProgressListener progressListener)
+    {
+        this.mProgressListener = progressListener;
+    }
+
+    @Override
+    public String getBodyContentType()
+    {
+        return MULTIPART_FORM_DATA + "; boundary=" + mBoundary;
+    }
+
+    /**
+     * Builds body of parts. Form without parts is sent as closing delimiter only, since
+     * MultipartBody requires at least one part. Body holding source part can be sent only
+     * once, so request isn't retried and its sources are closed when it finishes.
+     */
+    @Override
+    protected @Nullable RequestBody getRequestBody()
+    {
+        if (mParts.isEmpty())
+        {
+            return RequestBody.create(MediaType.parse(getBodyContentType()),
+                    ByteString.encodeUtf8("--" + mBoundary + "--\r\n"));
+        }
+
+        MultipartBody.Builder builder = new MultipartBody.Builder(mBoundary).setType(MULTIPART_FORM_DATA);
+        List<SmashStreamingBody> streamingParts = new ArrayList<>();
+        for (MultipartBody.Part part : mParts)
+        {
+            builder.addPart(part);
+            if (part.body() instanceof SmashStreamingBody)
+            {
+                streamingParts.add((SmashStreamingBody) part.body());
+            }
+        }
+
+        RequestBody body = builder.build();
+        if (mProgressListener != null)
+        {
+            body = new ProgressBody(body, mProgressListener);
+        }
+        return SmashStreamingBody.create(body, streamingParts);
+    }
+
+    /**
+     * Body reporting number of bytes written by delegate, once per write to sink.
+     */
+    private static class ProgressBody extends RequestBody
+    {
+
+        /** Body being written */
+        private final RequestBody mDelegate;
+
+        /** Listener of progress */
+        private final ProgressListener mListener;
+
+        ProgressBody(RequestBody delegate, ProgressListener listener)
+        {
+            this.mDelegate = delegate;
+            this.mListener = listener;
+        }
+
+        @Override
+        public MediaType contentType()
+        {
+            return mDelegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException
+        {
+            return mDelegate.contentLength();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException
+        {
+            final long total = contentLength();
+
+            BufferedSink counting = Okio.buffer(new ForwardingSink(sink)
+            {
+                /** Number of bytes written so far */
+                private long mUploaded = 0;
+
+                @Override
+                public void write(Buffer source, long byteCount) throws IOException
+                {
+                    super.write(source, byteCount);
+                    mUploaded += byteCount;
+                    mListener.onProgress(mUploaded, total);
+                }
+            });
+
+            mDelegate.writeTo(counting);
+            counting.emit();
+        }
+
+    }
+
+}
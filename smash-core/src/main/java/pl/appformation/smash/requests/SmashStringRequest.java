@@ -37,6 +37,15 @@ public class SmashStringRequest extends SmashRequest<String>
         super(method, url, successListener, failedListener);
     }
 
+    /**
+     * Strings are immutable, so result can be shared between requests.
+     */
+    @Override
+    public boolean isShouldCacheResult()
+    {
+        return true;
+    }
+
     protected SmashResponse<String> parseResponse(SmashNetworkData data)
     {
         try
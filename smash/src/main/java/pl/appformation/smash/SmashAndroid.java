@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Android platform support: logs to logcat, uses Android thread priorities
+ * and delivers responses on main (ui) thread.
+ */
+public class SmashAndroid
+{
+
+    /**
+     * Builds new SmashQueue to handle requests. Response will be delivered on main (ui) thread.
+     *
+     * @param context Context
+     * @return Newly created {@link SmashQueue}
+     */
+    public static SmashQueue buildSmashQueue(Context context)
+    {
+        install();
+
+        try
+        {
+            String packageName = context.getPackageName();
+            PackageInfo info = context.getPackageManager().getPackageInfo(packageName, 0);
+
+            Smash.setDefaultUserAgent(packageName + "/" + info.versionCode);
+        }
+        catch (PackageManager.NameNotFoundException ignored)
+        {
+        }
+
+        SmashQueue queue = new SmashQueue(new SmashLooperExecutor(Looper.getMainLooper()));
+        queue.start();
+
+        return queue;
+    }
+
+    /**
+     * Installs Android logger, thread priority policy and delivery on main (ui) thread
+     * for queues created without executor. Called by {@link #buildSmashQueue(Context)},
+     * call it directly (e.g. in Application.onCreate()) before creating {@link SmashQueue}
+     * manually.
+     */
+    public static void install()
+    {
+        Smash.setLogger(new LogcatLogger());
+        Smash.setThreadPriority(new ProcessThreadPriority());
+        Smash.setDefaultDelivery(new SmashLooperExecutor(Looper.getMainLooper()));
+    }
+
+    /**
+     * Logger writing messages to logcat.
+     */
+    private static class LogcatLogger implements SmashLogger
+    {
+
+        public void log(int level, String tag, String message)
+        {
+            Log.println(level, tag, message);
+        }
+
+    }
+
+    /**
+     * Thread priority policy using Android process thread priorities.
+     */
+    private static class ProcessThreadPriority implements SmashThreadPriority
+    {
+
+        public void applyBackgroundPriority()
+        {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        }
+
+    }
+
+}
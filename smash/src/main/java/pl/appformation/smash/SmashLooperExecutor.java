@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015-2017 Appformation sp. z o.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pl.appformation.smash;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor delivering responses on thread handled by looper.
+ *
+ * Threads other than main should first call Looper.prepare() before using it.
+ */
+public class SmashLooperExecutor implements Executor
+{
+
+    /** Handlers by looper, so every executor of the same looper shares one */
+    private static final Map<Looper, WeakReference<Handler>> sHandlers = new WeakHashMap<>();
+
+    /** Handler posting to looper */
+    private final Handler mHandler;
+
+    /**
+     * Creates executor for provided looper.
+     *
+     * @param looper Looper of thread to deliver responses on
+     */
+    public SmashLooperExecutor(@NonNull Looper looper)
+    {
+        mHandler = getHandler(looper);
+    }
+
+    /**
+     * Returns handler of provided looper, created only once per looper.
+     */
+    private static Handler getHandler(Looper looper)
+    {
+        synchronized (sHandlers)
+        {
+            WeakReference<Handler> reference = sHandlers.get(looper);
+            Handler handler = reference != null ? reference.get() : null;
+            if (handler == null)
+            {
+                handler = new Handler(looper);
+                sHandlers.put(looper, new WeakReference<>(handler));
+            }
+
+            return handler;
+        }
+    }
+
+    /**
+     * Creates executor delivering responses on provided looper in batches, so burst of
+     * responses takes few messages of looper instead of one per response.
+     *
+     * @param looper Looper of thread to deliver responses on
+     * @param maxBatch Maximum number of responses delivered within one message
+     * @param window Time in milliseconds during which responses are collected, 0 to post right away
+     * @return Batching executor
+     */
+    public static SmashBatchingExecutor batching(@NonNull Looper looper, int maxBatch, long window)
+    {
+        return new SmashBatchingExecutor(new SmashLooperExecutor(looper), maxBatch, window, TimeUnit.MILLISECONDS);
+    }
+
+    public void execute(@NonNull Runnable runnable)
+    {
+        mHandler.post(runnable);
+    }
+
+}